@@ -8,8 +8,16 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 @SpringBootApplication
 
 public class Application {
+    // время жизни простаивающего соединения HTTP-клиента обхода, с
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private static final String KEEP_ALIVE_TIMEOUT = "60";
 
     public static void main(String[] args) {
+        // JDK читает свойство один раз при создании пула соединений первого HttpClient,
+        // поэтому оно задается до запуска контекста; значение из -D имеет приоритет
+        if (System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+            System.setProperty(KEEP_ALIVE_PROPERTY, KEEP_ALIVE_TIMEOUT);
+        }
         SpringApplication.run(Application.class, args);
     }
 
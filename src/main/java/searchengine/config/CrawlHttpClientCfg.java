@@ -0,0 +1,26 @@
+package searchengine.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Общий HTTP-клиент обхода страниц. Клиент держит пул соединений для каждого хоста
+ * с keep-alive и использует HTTP/2 с мультиплексированием запросов, если сервер
+ * его поддерживает. Параметры задаются в секции jsop-cfg. Время жизни простаивающего
+ * соединения задается свойством JVM jdk.httpclient.keepalive.timeout в Application.main.
+ */
+@Configuration
+public class CrawlHttpClientCfg {
+
+    @Bean
+    public HttpClient crawlHttpClient(JsopConnectionCfg jsopConnectionCfg) {
+        return HttpClient.newBuilder()
+                .version(jsopConnectionCfg.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(jsopConnectionCfg.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+}
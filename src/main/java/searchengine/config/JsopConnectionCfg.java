@@ -17,4 +17,27 @@ public class JsopConnectionCfg {
     private String agent;
     private String referrer;
     Set<Integer> validCodes;
+    // пауза между запросами к одному сайту, мс
+    private int minDelay = 200;
+    private int maxDelay = 500;
+    // количество потоков обхода страниц, общих для всех сайтов
+    private int crawlThreads = 32;
+    // максимальное количество ссылок очереди обхода сайта, хранимых в памяти
+    private int frontierWindow = 1000;
+    // таймауты установки соединения и ожидания ответа, мс
+    private int connectTimeout = 10000;
+    private int readTimeout = 30000;
+    // максимальный размер загружаемого тела страницы, байт
+    private int maxBodySize = 5 * 1024 * 1024;
+    private boolean http2 = true;
+    // запрашивать сжатое тело ответа (gzip, deflate)
+    private boolean compression = true;
+    // соблюдать правила robots.txt (Disallow/Allow, Crawl-delay)
+    private boolean robots = true;
+    // время хранения загруженного robots.txt, мин
+    private int robotsCacheTtl = 1440;
+    // добавлять в очередь обхода адреса из sitemap.xml
+    private boolean sitemap = true;
+    // максимальное количество адресов, загружаемых из sitemap сайта
+    private int maxSitemapUrls = 50000;
 }
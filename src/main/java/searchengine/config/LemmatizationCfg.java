@@ -0,0 +1,25 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "lemmatization-cfg")
+public class LemmatizationCfg {
+    // максимальное количество загруженных страниц, ожидающих лемматизации
+    private int queueCapacity = 500;
+    // количество страниц, лемматизируемых и записываемых в индекс за один раз
+    private int batchSize = 50;
+    // максимальное время ожидания неполной пачки страниц, мс
+    private int flushInterval = 1000;
+    // максимальное количество словоформ в кэше морфологического словаря
+    private int morphologyCacheSize = 200000;
+    // количество потоков лемматизации, 0 - по количеству ядер
+    private int parallelism = 0;
+    // количество строк лемм и индекса в одном пакетном INSERT
+    private int writeBatchSize = 1000;
+}
@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Setter
+@Getter
+@Component
+@ConfigurationProperties(prefix = "search-cfg")
+public class SearchCfg {
+    // максимальное количество запросов в кэше результатов поиска
+    private int cacheSize = 1000;
+    // время хранения результата поиска в кэше, с
+    private int cacheTtl = 300;
+    // оценка релевантности: bm25 или termCount (сумма упоминаний лемм запроса)
+    private String scoring = "bm25";
+    // насыщение BM25 по количеству упоминаний леммы
+    private double bm25K1 = 1.2;
+    // влияние длины страницы в BM25, 0 - не учитывать
+    private double bm25B = 0.75;
+}
@@ -39,14 +39,29 @@ public class ApiController {
     }
 
     @GetMapping("/startIndexing")
-    public ResponseEntity<IndexingResponse> startIndexing() {
+    public ResponseEntity<IndexingResponse> startIndexing(
+            @RequestParam(required = false, defaultValue = "false") boolean incremental) {
         log.info("Controller: start indexing");
         if (RunIndexMonitor.isIndexingRunning()) {
             return new ResponseEntity<IndexingResponse>(
                     new IndexingResponse(false, "Индексация уже запущена"),
                     HttpStatus.FORBIDDEN);
         }
-        IndexingResponse res = indexService.indexingAllSites();
+        IndexingResponse res = incremental ? indexService.incrementalIndexingAllSites()
+                : indexService.indexingAllSites();
+
+        return new ResponseEntity<>(res, HttpStatus.OK);
+    }
+
+    @GetMapping("/resumeIndexing")
+    public ResponseEntity<IndexingResponse> resumeIndexing() {
+        log.info("Controller: resume indexing");
+        if (RunIndexMonitor.isIndexingRunning()) {
+            return new ResponseEntity<IndexingResponse>(
+                    new IndexingResponse(false, "Индексация уже запущена"),
+                    HttpStatus.FORBIDDEN);
+        }
+        IndexingResponse res = indexService.resumeIndexing();
 
         return new ResponseEntity<>(res, HttpStatus.OK);
     }
@@ -5,7 +5,6 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import searchengine.model.Site;
-import searchengine.repository.PageRepository;
 
 @Setter
 @Getter
@@ -15,4 +14,10 @@ public class PageDto {
     private String url;
     private String rootUrl;
     private Site site;
+    // дата изменения страницы из sitemap (W3C Datetime), если известна
+    private String lastmod;
+
+    public PageDto(String url, String rootUrl, Site site) {
+        this(url, rootUrl, site, null);
+    }
 }
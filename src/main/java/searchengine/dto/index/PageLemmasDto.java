@@ -0,0 +1,18 @@
+package searchengine.dto.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Результат лемматизации текста страницы с позициями слов
+ */
+@Getter
+@AllArgsConstructor
+public class PageLemmasDto {
+    // лемма -> порядковые номера слов текста, в которых она встречается (по возрастанию)
+    private final Map<String, int[]> positions;
+    // позиция в тексте первого символа каждого слова (индекс - порядковый номер слова)
+    private final int[] tokenOffsets;
+}
@@ -0,0 +1,23 @@
+package searchengine.dto.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import searchengine.model.Site;
+
+import java.util.List;
+
+/**
+ * Найденные по запросу страницы с оценками релевантности. Заголовки и сниппеты
+ * строятся позже, только для страниц, попавших в запрошенный диапазон.
+ */
+@Getter
+@AllArgsConstructor
+public class SearchResultData {
+    // леммы запроса, по которым подбирались страницы
+    private final List<String> lemmas;
+    // сайт поиска, null - все сайты
+    private final Site site;
+    private final int[] pageIds;
+    // абсолютная релевантность страницы (индекс совпадает с pageIds)
+    private final double[] scores;
+}
@@ -0,0 +1,50 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Ссылка в очереди обхода сайта (frontier). Ссылки добавляются в таблицу в порядке
+ * обнаружения и читаются из нее по возрастанию id, поэтому обход можно продолжить
+ * после остановки или перезапуска приложения.
+ */
+@Entity
+@Setter @Getter
+@NoArgsConstructor
+@Table(name = "frontier", indexes = @Index(name = "frontier_site_status", columnList = "site_id, status"))
+public class FrontierLink {
+
+    public FrontierLink(Site site, String url) {
+        this(site, url, null);
+    }
+
+    public FrontierLink(Site site, String url, String lastmod) {
+        this.site = site;
+        this.url = url;
+        this.lastmod = lastmod;
+        this.status = FrontierStatus.QUEUED;
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne
+    @JoinColumn(name = "site_id", nullable = false)
+    private Site site;
+
+    // абсолютный адрес страницы
+    @Column(columnDefinition = "TEXT", name = "url", nullable = false)
+    private String url;
+
+    @Enumerated(EnumType.STRING)
+    @Column(columnDefinition = "ENUM('QUEUED', 'FETCHED', 'FAILED')", name = "status", nullable = false)
+    private FrontierStatus status;
+
+    // дата изменения страницы из sitemap.xml
+    @Column(name = "lastmod", length = 64)
+    private String lastmod;
+}
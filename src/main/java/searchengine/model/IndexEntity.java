@@ -25,4 +25,8 @@ public class IndexEntity {
     @Column(name="rating", nullable=false)
     private Double rank;
 
+    // порядковые номера слов страницы с этой леммой, сжатые VarIntToolsBox
+    @Column(name="positions", columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
+
 }
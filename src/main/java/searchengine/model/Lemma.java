@@ -8,7 +8,7 @@ import javax.persistence.*;
 import java.util.Set;
 
 @Entity
-@Table(name="lemma")
+@Table(name="lemma", uniqueConstraints = @UniqueConstraint(name = "site_lemma", columnNames = {"site_id", "lemma"}))
 @Getter
 @Setter
 @NoArgsConstructor
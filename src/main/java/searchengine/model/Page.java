@@ -32,4 +32,27 @@ public class Page {
     @Column(columnDefinition = "MEDIUMTEXT", name = "content", nullable  = false)
     private String content;
 
+    // заголовок и видимый текст страницы, извлекаются при загрузке
+    @Column(columnDefinition = "TEXT", name = "title")
+    private String title;
+
+    @Column(columnDefinition = "MEDIUMTEXT", name = "text")
+    private String text;
+
+    // заголовки ETag и Last-Modified ответа, используются для условного запроса
+    // при повторной индексации
+    @Column(columnDefinition = "VARCHAR(255)", name = "etag")
+    private String etag;
+
+    @Column(columnDefinition = "VARCHAR(64)", name = "last_modified")
+    private String lastModified;
+
+    // SHA-256 контента страницы
+    @Column(columnDefinition = "CHAR(64)", name = "content_hash")
+    private String contentHash;
+
+    // позиции слов в тексте страницы (text), сжатые VarIntToolsBox
+    @Column(columnDefinition = "MEDIUMBLOB", name = "token_offsets")
+    private byte[] tokenOffsets;
+
 }
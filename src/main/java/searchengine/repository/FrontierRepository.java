@@ -0,0 +1,32 @@
+package searchengine.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.FrontierLink;
+import searchengine.model.FrontierStatus;
+import searchengine.model.Site;
+
+import java.util.List;
+
+public interface FrontierRepository extends JpaRepository<FrontierLink, Integer> {
+
+    List<FrontierLink> findBySiteAndStatusOrderByIdAsc(Site site, FrontierStatus status, Pageable pageable);
+
+    List<FrontierLink> findBySiteAndIdGreaterThanOrderByIdAsc(Site site, Integer id, Pageable pageable);
+
+    boolean existsBySiteAndStatus(Site site, FrontierStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("update FrontierLink f set f.status = :status where f.id = :id")
+    void updateStatus(@Param("id") Integer id, @Param("status") FrontierStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("delete from FrontierLink f where f.site = :site")
+    void deleteBySite(@Param("site") Site site);
+}
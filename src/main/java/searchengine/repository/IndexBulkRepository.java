@@ -0,0 +1,115 @@
+package searchengine.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import searchengine.config.LemmatizationCfg;
+import searchengine.model.IndexEntity;
+import searchengine.model.Page;
+import searchengine.model.Site;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пакетная запись лемм и индекса через JDBC. Сущности с генерацией id
+ * IDENTITY Hibernate сохраняет по одному INSERT на строку, здесь строки
+ * отправляются пачками по write-batch-size, а драйвер MySQL с параметром
+ * rewriteBatchedStatements=true объединяет пачку в многострочный INSERT.
+ * Частоты лемм изменяются атомарно на стороне БД (уникальный ключ site_id, lemma),
+ * поэтому страницы одного сайта можно индексировать одновременно.
+ * Запросы выполняются в транзакции вызывающего кода, если она открыта.
+ */
+@Slf4j
+@Repository
+public class IndexBulkRepository {
+    private static final String INSERT_INDEX = "INSERT INTO index_t (page_id, lemma_id, rating, positions) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_TOKEN_OFFSETS = "UPDATE page SET token_offsets = ? WHERE id = ?";
+    private static final String UPSERT_LEMMA = "INSERT INTO lemma (site_id, lemma, frequency) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder nanosSpent = new LongAdder();
+
+    public IndexBulkRepository(JdbcTemplate jdbcTemplate, LemmatizationCfg cfg) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = cfg.getWriteBatchSize();
+    }
+
+    /**
+     * Записывает строки индекса. Страница и лемма каждой строки должны быть сохранены.
+     * @param rows строки индекса
+     */
+    public void insertIndex(List<IndexEntity> rows) {
+        long start = System.nanoTime();
+        jdbcTemplate.batchUpdate(INSERT_INDEX, rows, batchSize, (ps, row) -> {
+            ps.setInt(1, row.getPage().getId());
+            ps.setInt(2, row.getLemma().getId());
+            ps.setDouble(3, row.getRank());
+            ps.setBytes(4, row.getPositions());
+        });
+        measure("index_t", rows.size(), start);
+    }
+
+    /**
+     * Записывает позиции слов в тексте страниц
+     * @param pages сохраненные страницы с заполненным tokenOffsets
+     */
+    public void updateTokenOffsets(List<Page> pages) {
+        long start = System.nanoTime();
+        jdbcTemplate.batchUpdate(UPDATE_TOKEN_OFFSETS, pages, batchSize, (ps, page) -> {
+            ps.setBytes(1, page.getTokenOffsets());
+            ps.setInt(2, page.getId());
+        });
+        measure("page", pages.size(), start);
+    }
+
+    /**
+     * Увеличивает frequency лемм сайта, отсутствующие леммы добавляются.
+     * id лемм не заполняются.
+     * @param site сайт
+     * @param increments лемма -> на сколько увеличить frequency
+     */
+    public void incrementFrequencies(Site site, Map<String, Integer> increments) {
+        long start = System.nanoTime();
+        // одинаковый порядок ключей в параллельных транзакциях исключает взаимные блокировки
+        List<Map.Entry<String, Integer>> rows = new ArrayList<>(new TreeMap<>(increments).entrySet());
+        jdbcTemplate.batchUpdate(UPSERT_LEMMA, rows, batchSize, (ps, entry) -> {
+            ps.setInt(1, site.getId());
+            ps.setString(2, entry.getKey());
+            ps.setInt(3, entry.getValue());
+        });
+        measure("lemma", increments.size(), start);
+    }
+
+    /**
+     * @return long количество строк, записанных с момента запуска приложения
+     */
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    /**
+     * @return long средняя скорость записи с момента запуска приложения, строк/с
+     */
+    public long getRowsPerSecond() {
+        long nanos = nanosSpent.sum();
+        return nanos == 0 ? 0 : rowsWritten.sum() * 1_000_000_000L / nanos;
+    }
+
+    private void measure(String table, int rows, long start) {
+        if (rows == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        rowsWritten.add(rows);
+        nanosSpent.add(nanos);
+        log.debug("{}: записано строк {} за {} мс ({} строк/с)", table, rows, nanos / 1_000_000,
+                rows * 1_000_000_000L / Math.max(1, nanos));
+    }
+}
@@ -1,7 +1,39 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.IndexEntity;
 
+import java.util.List;
+
 public interface IndexEntityRepository extends JpaRepository<IndexEntity, Integer> {
+
+    /**
+     * Уменьшает на 1 frequency всех лемм страницы одним запросом
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "update lemma l join index_t i on i.lemma_id = l.id " +
+            "set l.frequency = l.frequency - 1 where i.page_id = :pageId", nativeQuery = true)
+    int decrementLemmasByPage(@Param("pageId") Integer pageId);
+
+    /**
+     * Леммы, которые встречаются на странице
+     */
+    @Query("select i.lemma.lemma from IndexEntity i where i.page.id = :pageId")
+    List<String> findLemmasByPage(@Param("pageId") Integer pageId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from index_t where page_id = :pageId", nativeQuery = true)
+    int deleteByPage(@Param("pageId") Integer pageId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete i from index_t i join page p on i.page_id = p.id where p.site_id = :siteId",
+            nativeQuery = true)
+    int deleteBySite(@Param("siteId") Integer siteId);
 }
@@ -0,0 +1,93 @@
+package searchengine.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Чтение индекса для поиска. Строки индекса всех страниц результата загружаются
+ * одним запросом по спискам страниц и лемм, без загрузки сущностей Page и Lemma,
+ * и возвращаются в виде массивов примитивов.
+ */
+@Repository
+public class IndexSearchRepository {
+    private static final String SELECT_ROWS = "SELECT i.page_id, i.lemma_id, i.rating, i.positions FROM index_t i "
+            + "JOIN lemma l ON l.id = i.lemma_id WHERE i.page_id IN (:pageIds) AND l.lemma IN (:lemmas)";
+    // количество страниц в одном запросе
+    private static final int PAGE_QUERY_CHUNK = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Строки индекса, i-я строка - (pageIds[i], lemmaIds[i], ranks[i], positions[i])
+     * @param positions порядковые номера слов с леммой, сжатые VarIntToolsBox
+     */
+    public record Rows(int size, int[] pageIds, int[] lemmaIds, double[] ranks, byte[][] positions) {
+    }
+
+    public IndexSearchRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Загружает строки индекса указанных страниц для указанных лемм
+     * @param pageIds id страниц
+     * @param lemmas леммы
+     * @return Rows найденные строки индекса
+     */
+    public Rows findRows(Collection<Integer> pageIds, Collection<String> lemmas) {
+        RowsBuilder rows = new RowsBuilder(pageIds.size() * Math.max(1, lemmas.size()));
+        if (pageIds.isEmpty() || lemmas.isEmpty()) {
+            return rows.build();
+        }
+        List<Integer> ids = new ArrayList<>(pageIds);
+        for (int from = 0; from < ids.size(); from += PAGE_QUERY_CHUNK) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("pageIds", ids.subList(from, Math.min(ids.size(), from + PAGE_QUERY_CHUNK)))
+                    .addValue("lemmas", lemmas);
+            jdbcTemplate.query(SELECT_ROWS, params, rs -> {
+                rows.add(rs.getInt(1), rs.getInt(2), rs.getDouble(3), rs.getBytes(4));
+            });
+        }
+        return rows.build();
+    }
+
+    private static class RowsBuilder {
+        private int size = 0;
+        private int[] pageIds;
+        private int[] lemmaIds;
+        private double[] ranks;
+        private byte[][] positions;
+
+        RowsBuilder(int capacity) {
+            capacity = Math.max(16, capacity);
+            pageIds = new int[capacity];
+            lemmaIds = new int[capacity];
+            ranks = new double[capacity];
+            positions = new byte[capacity][];
+        }
+
+        void add(int pageId, int lemmaId, double rank, byte[] pagePositions) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                lemmaIds = Arrays.copyOf(lemmaIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            pageIds[size] = pageId;
+            lemmaIds[size] = lemmaId;
+            ranks[size] = rank;
+            positions[size] = pagePositions;
+            size++;
+        }
+
+        Rows build() {
+            return new Rows(size, pageIds, lemmaIds, ranks, positions);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package searchengine.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс в памяти: лемма сайта -> сжатый список страниц
+ * ({@link PostingList}) с количеством упоминаний леммы. Строится из таблицы index_t
+ * при запуске приложения и дополняется при индексации страниц, поиск подбирает
+ * страницы по нему без запросов к БД. Пока индекс загружается, {@link #isReady()}
+ * возвращает false. Для оценки релевантности хранятся длины страниц (количество
+ * слов с леммами) в массиве по id страницы и суммарная длина страниц каждого сайта.
+ * Изменения индекса, пришедшие во время загрузки, откладываются и применяются по
+ * порядку после чтения таблицы, только после этого индекс становится готовым.
+ * Все изменения идемпотентны, поэтому повторное применение изменения, которое уже
+ * попало в прочитанные из таблицы данные, не нарушает индекс.
+ */
+@Slf4j
+@Repository
+public class InvertedIndex {
+    private static final String SELECT_INDEX = "SELECT i.page_id, l.site_id, l.lemma, i.rating "
+            + "FROM index_t i JOIN lemma l ON l.id = i.lemma_id ORDER BY i.page_id";
+
+    private final DataSource dataSource;
+    // site_id -> лемма -> страницы
+    private final Map<Integer, Map<String, PostingList>> sites = new ConcurrentHashMap<>();
+    // site_id -> проиндексированные страницы сайта
+    private final Map<Integer, Set<Integer>> sitePages = new ConcurrentHashMap<>();
+    // site_id -> суммарная длина страниц сайта
+    private final Map<Integer, AtomicLong> siteLengths = new ConcurrentHashMap<>();
+    // page_id -> длина страницы, массив заменяется при росте под блокировкой lengthLock
+    private volatile int[] pageLengths = new int[1024];
+    private final Object lengthLock = new Object();
+    private volatile boolean ready = false;
+    // изменения индекса применяются под блокировкой чтения, начало и конец загрузки - под блокировкой записи
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private boolean loading = false;
+    // изменения, пришедшие во время загрузки
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Результат подбора страниц по запросу со статистикой для оценки релевантности.
+     * Статистика считается по всем сайтам поиска.
+     * @param lemmas леммы запроса, по которым подбирались страницы, от редких к частым
+     * @param pageIds id страниц, содержащих все леммы
+     * @param counts counts[t][i] - количество упоминаний леммы t на странице pageIds[i]
+     * @param frequencies количество страниц с леммой t
+     * @param lengths длина страницы pageIds[i]
+     * @param pageCount количество проиндексированных страниц
+     * @param averageLength средняя длина страницы
+     */
+    public record Match(List<String> lemmas, int[] pageIds, int[][] counts, int[] frequencies,
+                        int[] lengths, int pageCount, double averageLength) {
+        public int size() {
+            return pageIds.length;
+        }
+    }
+
+    public InvertedIndex(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Запускает загрузку индекса из БД в отдельном потоке
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Thread thread = new Thread(this::build, "inverted-index-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void build() {
+        long start = System.currentTimeMillis();
+        // изменения, зафиксированные в БД до начала запроса, попадут в прочитанные данные,
+        // более поздние откладываются до конца загрузки
+        stateLock.writeLock().lock();
+        try {
+            loading = true;
+            ready = false;
+            clearAll();
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        boolean loaded = false;
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            // драйвер MySQL передает строки потоком, а не загружает результат целиком
+            jdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+            jdbcTemplate.query(SELECT_INDEX, rs -> {
+                int count = (int) rs.getDouble(4);
+                add(rs.getInt(2), rs.getInt(1), rs.getString(3), count);
+                addLength(rs.getInt(2), rs.getInt(1), count);
+            });
+            loaded = true;
+        } catch (Exception e) {
+            log.error("Ошибка загрузки инвертированного индекса, поиск выполняется по БД", e);
+        }
+        stateLock.writeLock().lock();
+        try {
+            int replayed = pending.size();
+            Runnable mutation;
+            while ((mutation = pending.poll()) != null) {
+                mutation.run();
+            }
+            loading = false;
+            ready = loaded;
+            if (loaded) {
+                log.info("Инвертированный индекс загружен за {} мс: лемм {}, страниц {}, {} КБ, "
+                                + "изменений во время загрузки {}", System.currentTimeMillis() - start,
+                        getLemmaCount(), getPageCount(), getByteSize() / 1024, replayed);
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Применяет изменение индекса или откладывает его до конца загрузки
+     */
+    private void mutate(Runnable mutation) {
+        stateLock.readLock().lock();
+        try {
+            if (loading) {
+                pending.add(mutation);
+            } else {
+                mutation.run();
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return boolean true - индекс загружен и используется для поиска
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Добавляет в индекс леммы страницы. Если страница уже была в индексе,
+     * количество упоминаний ее лемм и длина страницы заменяются.
+     * @param siteId id сайта
+     * @param pageId id страницы
+     * @param counts лемма -> количество упоминаний на странице
+     */
+    public void addPage(int siteId, int pageId, Map<String, Integer> counts) {
+        mutate(() -> {
+            counts.forEach((lemma, count) -> add(siteId, pageId, lemma, count));
+            int length = counts.values().stream().mapToInt(Integer::intValue).sum();
+            addLength(siteId, pageId, length - getLength(pageId));
+        });
+    }
+
+    /**
+     * Удаляет страницу из списков указанных лемм
+     * @param siteId id сайта
+     * @param pageId id страницы
+     * @param lemmas леммы страницы
+     */
+    public void removePage(int siteId, int pageId, Collection<String> lemmas) {
+        mutate(() -> applyRemovePage(siteId, pageId, lemmas));
+    }
+
+    private void applyRemovePage(int siteId, int pageId, Collection<String> lemmas) {
+        Map<String, PostingList> lists = sites.get(siteId);
+        if (lists != null) {
+            for (String lemma : lemmas) {
+                PostingList list = lists.get(lemma);
+                if (list != null) {
+                    list.remove(pageId);
+                }
+            }
+        }
+        Set<Integer> pages = sitePages.get(siteId);
+        if (pages != null) {
+            pages.remove(pageId);
+        }
+        addLength(siteId, pageId, -getLength(pageId));
+    }
+
+    /**
+     * Удаляет из индекса все леммы сайта
+     * @param siteId id сайта
+     */
+    public void removeSite(int siteId) {
+        mutate(() -> applyRemoveSite(siteId));
+    }
+
+    private void applyRemoveSite(int siteId) {
+        sites.remove(siteId);
+        Set<Integer> pages = sitePages.remove(siteId);
+        siteLengths.remove(siteId);
+        if (pages != null) {
+            synchronized (lengthLock) {
+                pages.forEach(pageId -> pageLengths[pageId] = 0);
+            }
+        }
+    }
+
+    public void clear() {
+        mutate(this::clearAll);
+    }
+
+    private void clearAll() {
+        sites.clear();
+        sitePages.clear();
+        siteLengths.clear();
+        synchronized (lengthLock) {
+            pageLengths = new int[1024];
+        }
+    }
+
+    /**
+     * Подбирает страницы, содержащие все леммы запроса. Леммы, которые встречаются
+     * более чем на limitPercent процентах страниц, не учитываются. Списки страниц
+     * пересекаются от самой редкой леммы к самой частой (см. {@link #intersect(Map, List)}).
+     * @param lemmas леммы запроса
+     * @param siteId id сайта, null - поиск по всем сайтам
+     * @param limitPercent максимальная доля страниц с леммой, %
+     * @return Match леммы запроса и найденные страницы
+     */
+    public Match match(Collection<String> lemmas, Integer siteId, double limitPercent) {
+        List<Integer> siteIds = siteId == null ? new ArrayList<>(sites.keySet()) : List.of(siteId);
+        int pageCount = siteIds.stream().mapToInt(this::getPageCount).sum();
+        if (pageCount == 0) {
+            return emptyMatch(List.of(), pageCount, 0);
+        }
+        long totalLength = siteIds.stream().mapToLong(this::getTotalLength).sum();
+        double averageLength = (double) totalLength / pageCount;
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String lemma : lemmas) {
+            int frequency = siteIds.stream().mapToInt(id -> getFrequency(id, lemma)).sum();
+            if ((double) frequency / pageCount * 100 <= limitPercent) {
+                frequencies.put(lemma, frequency);
+            }
+        }
+        List<String> sortedLemmas = frequencies.keySet().stream()
+                .sorted(Comparator.comparing(frequencies::get))
+                .toList();
+        if (sortedLemmas.isEmpty()) {
+            return emptyMatch(sortedLemmas, pageCount, averageLength);
+        }
+        // страница принадлежит одному сайту, поэтому списки пересекаются по каждому сайту отдельно
+        List<int[]> foundIds = new ArrayList<>();
+        List<int[][]> foundCounts = new ArrayList<>();
+        int total = 0;
+        for (Integer id : siteIds) {
+            Map<String, PostingList> lists = sites.getOrDefault(id, Map.of());
+            int[] found = intersect(lists, sortedLemmas);
+            if (found.length == 0) {
+                continue;
+            }
+            // количество упоминаний каждой леммы на найденных страницах
+            int[][] counts = new int[sortedLemmas.size()][found.length];
+            for (int t = 0; t < counts.length; t++) {
+                PostingList.Postings postings = lists.get(sortedLemmas.get(t)).retain(found);
+                // страница могла быть удалена после пересечения, ее количество остается 0
+                int k = 0;
+                for (int j = 0; j < postings.size(); j++) {
+                    while (found[k] != postings.pageIds()[j]) {
+                        k++;
+                    }
+                    counts[t][k] = postings.counts()[j];
+                }
+            }
+            foundIds.add(found);
+            foundCounts.add(counts);
+            total += found.length;
+        }
+        int[] pageIds = new int[total];
+        int[][] counts = new int[sortedLemmas.size()][total];
+        int pos = 0;
+        for (int site = 0; site < foundIds.size(); site++) {
+            int[] found = foundIds.get(site);
+            System.arraycopy(found, 0, pageIds, pos, found.length);
+            for (int t = 0; t < counts.length; t++) {
+                System.arraycopy(foundCounts.get(site)[t], 0, counts[t], pos, found.length);
+            }
+            pos += found.length;
+        }
+        int[] lengths = new int[total];
+        int[] snapshot = pageLengths;
+        for (int i = 0; i < total; i++) {
+            lengths[i] = pageIds[i] < snapshot.length ? snapshot[pageIds[i]] : 0;
+        }
+        int[] lemmaFrequencies = sortedLemmas.stream().mapToInt(frequencies::get).toArray();
+        return new Match(sortedLemmas, pageIds, counts, lemmaFrequencies, lengths, pageCount, averageLength);
+    }
+
+    private Match emptyMatch(List<String> lemmas, int pageCount, double averageLength) {
+        return new Match(lemmas, new int[0], new int[lemmas.size()][0], new int[lemmas.size()],
+                new int[0], pageCount, averageLength);
+    }
+
+    /**
+     * @param siteId id сайта
+     * @param lemma лемма
+     * @return int количество страниц сайта с леммой
+     */
+    public int getFrequency(int siteId, String lemma) {
+        PostingList list = sites.getOrDefault(siteId, Map.of()).get(lemma);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * @param siteId id сайта
+     * @return int количество проиндексированных страниц сайта
+     */
+    public int getPageCount(int siteId) {
+        Set<Integer> pages = sitePages.get(siteId);
+        return pages == null ? 0 : pages.size();
+    }
+
+    /**
+     * @param siteId id сайта
+     * @return long суммарная длина страниц сайта
+     */
+    public long getTotalLength(int siteId) {
+        AtomicLong length = siteLengths.get(siteId);
+        return length == null ? 0 : length.get();
+    }
+
+    /**
+     * @param pageId id страницы
+     * @return int количество слов с леммами на странице
+     */
+    public int getLength(int pageId) {
+        int[] lengths = pageLengths;
+        return pageId < lengths.length ? lengths[pageId] : 0;
+    }
+
+    public int getPageCount() {
+        return sitePages.values().stream().mapToInt(Set::size).sum();
+    }
+
+    public int getLemmaCount() {
+        return sites.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * @return long размер сжатых списков страниц, байт
+     */
+    public long getByteSize() {
+        return sites.values().stream()
+                .flatMap(lists -> lists.values().stream())
+                .mapToLong(PostingList::byteSize)
+                .sum();
+    }
+
+    private void add(int siteId, int pageId, String lemma, int count) {
+        sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(lemma, l -> new PostingList())
+                .add(pageId, count);
+        sitePages.computeIfAbsent(siteId, id -> ConcurrentHashMap.newKeySet()).add(pageId);
+    }
+
+    private void addLength(int siteId, int pageId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        synchronized (lengthLock) {
+            if (pageId >= pageLengths.length) {
+                pageLengths = Arrays.copyOf(pageLengths, Math.max(pageId + 1, pageLengths.length * 2));
+            }
+            pageLengths[pageId] += delta;
+        }
+        siteLengths.computeIfAbsent(siteId, id -> new AtomicLong()).addAndGet(delta);
+    }
+
+    /**
+     * Пересекает списки страниц лемм, отсортированных от редкой к частой. Распаковывается
+     * только список самой редкой леммы, остальные списки проверяются галопирующим поиском
+     * по блокам ({@link PostingList#retain(int[])}). Пересечение прекращается, как только
+     * результат становится пустым.
+     */
+    private int[] intersect(Map<String, PostingList> lists, List<String> lemmas) {
+        List<PostingList> postingLists = new ArrayList<>(lemmas.size());
+        for (String lemma : lemmas) {
+            PostingList list = lists.get(lemma);
+            if (list == null) {
+                return new int[0];
+            }
+            postingLists.add(list);
+        }
+        // частоты общие для выбранных сайтов, внутри сайта порядок может отличаться
+        postingLists.sort(Comparator.comparingInt(PostingList::size));
+        int[] result = postingLists.get(0).read().pageIds();
+        for (int i = 1; i < postingLists.size() && result.length > 0; i++) {
+            result = postingLists.get(i).retain(result).pageIds();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,78 @@
+package searchengine.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Проверяет при запуске уникальный ключ site_lemma (site_id, lemma) таблицы lemma,
+ * на котором основано атомарное увеличение частот INSERT ... ON DUPLICATE KEY UPDATE.
+ * Hibernate с ddl-auto: update не может создать ключ, если в таблице уже есть
+ * дубликаты лемм (их создавало прежнее чтение-изменение-запись при параллельной
+ * индексации), и только пишет ошибку в журнал. Поэтому дубликаты объединяются здесь:
+ * строки индекса переводятся на лемму с наименьшим id, частота пересчитывается
+ * по страницам индекса, лишние леммы удаляются, после чего создается ключ.
+ * Если ключ создать не удалось, приложение не запускается.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class LemmaKeyMigration {
+    private static final String KEY_NAME = "site_lemma";
+    private static final String COUNT_KEY = "SELECT COUNT(*) FROM information_schema.statistics "
+            + "WHERE table_schema = DATABASE() AND table_name = 'lemma' AND index_name = ?";
+    // дубликаты лемм и лемма, которая остается (GROUP BY материализует выборку до изменения lemma)
+    private static final String DUPLICATES = "(SELECT site_id, lemma, MIN(id) AS keep_id FROM lemma "
+            + "GROUP BY site_id, lemma HAVING COUNT(*) > 1)";
+    private static final String MOVE_INDEX_ROWS = "UPDATE index_t i JOIN lemma l ON l.id = i.lemma_id "
+            + "JOIN " + DUPLICATES + " k ON k.site_id = l.site_id AND k.lemma = l.lemma "
+            + "SET i.lemma_id = k.keep_id WHERE l.id <> k.keep_id";
+    private static final String DELETE_DUPLICATE_INDEX_ROWS = "DELETE i FROM index_t i JOIN index_t j "
+            + "ON j.page_id = i.page_id AND j.lemma_id = i.lemma_id AND j.id < i.id";
+    private static final String UPDATE_FREQUENCIES = "UPDATE lemma l JOIN " + DUPLICATES + " k ON k.keep_id = l.id "
+            + "SET l.frequency = (SELECT COUNT(DISTINCT i.page_id) FROM index_t i WHERE i.lemma_id = l.id)";
+    private static final String DELETE_DUPLICATES = "DELETE l FROM lemma l JOIN " + DUPLICATES + " k "
+            + "ON k.site_id = l.site_id AND k.lemma = l.lemma WHERE l.id <> k.keep_id";
+    private static final String ADD_KEY = "ALTER TABLE lemma ADD CONSTRAINT " + KEY_NAME + " UNIQUE (site_id, lemma)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public LemmaKeyMigration(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (hasKey()) {
+            return;
+        }
+        log.warn("В таблице lemma нет уникального ключа {}, объединение дубликатов лемм", KEY_NAME);
+        try {
+            Integer removed = transactionTemplate.execute(status -> {
+                jdbcTemplate.update(MOVE_INDEX_ROWS);
+                jdbcTemplate.update(DELETE_DUPLICATE_INDEX_ROWS);
+                jdbcTemplate.update(UPDATE_FREQUENCIES);
+                return jdbcTemplate.update(DELETE_DUPLICATES);
+            });
+            jdbcTemplate.execute(ADD_KEY);
+            log.info("Удалено дубликатов лемм: {}, создан уникальный ключ {}", removed, KEY_NAME);
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось создать уникальный ключ " + KEY_NAME
+                    + " (site_id, lemma) таблицы lemma", e);
+        }
+        if (!hasKey()) {
+            throw new IllegalStateException("В таблице lemma нет уникального ключа " + KEY_NAME);
+        }
+    }
+
+    private boolean hasKey() {
+        Integer count = jdbcTemplate.queryForObject(COUNT_KEY, Integer.class, KEY_NAME);
+        return count != null && count > 0;
+    }
+}
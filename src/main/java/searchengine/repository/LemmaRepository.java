@@ -1,8 +1,30 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Lemma;
+import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
 
+    List<Lemma> findBySiteAndLemmaIn(Site site, Collection<String> lemmas);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Lemma l where l.site = :site")
+    int deleteBySite(@Param("site") Site site);
+
+    /**
+     * Удаляет леммы сайта из списка, которые больше не встречаются ни на одной странице
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Lemma l where l.site = :site and l.lemma in :lemmas and l.frequency <= 0")
+    int deleteUnusedBySiteAndLemmaIn(@Param("site") Site site, @Param("lemmas") Collection<String> lemmas);
 }
@@ -1,19 +1,148 @@
 package searchengine.repository;
 
-import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Множество посещенных ссылок одной сессии обхода сайта.
+ * Ссылки хранятся в виде 64-битных отпечатков (8 байт на ссылку) в таблице,
+ * разбитой на сегменты со своими блокировками, общей блокировки нет. Перед таблицей
+ * стоит фильтр Блума без блокировок, который быстро отвечает на вопрос
+ * "ссылка точно не встречалась".
+ */
 public class LinkStorage {
-    private static HashSet<String> linksHash = new HashSet<>();
+    private static final int BLOOM_BITS = 1 << 23;
+    private static final int BLOOM_HASHES = 4;
+    private static final int SEGMENTS = 64;
+    private static final int SEGMENT_CAPACITY = 1024;
 
-    public static synchronized void addLink(String link){
-        linksHash.add(link);
+    private final AtomicLongArray bloom = new AtomicLongArray(BLOOM_BITS / Long.SIZE);
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public LinkStorage() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Добавляет ссылку в хранилище
+     * @param link String ссылка
+     * @return boolean true - ссылка добавлена, false - ссылка уже была в хранилище
+     */
+    public boolean addLink(String link) {
+        long fingerprint = fingerprint(link);
+        bloomAdd(fingerprint);
+        return segmentOf(fingerprint).add(fingerprint);
+    }
+
+    public boolean containsLink(String link) {
+        long fingerprint = fingerprint(link);
+        if (!bloomContains(fingerprint)) {
+            return false;
+        }
+        return segmentOf(fingerprint).contains(fingerprint);
+    }
+
+    private Segment segmentOf(long fingerprint) {
+        return segments[(int) (fingerprint >>> 58)];
+    }
+
+    private void bloomAdd(long fingerprint) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = bloomBit(fingerprint, i);
+            int index = bit >>> 6;
+            long mask = 1L << bit;
+            long word = bloom.get(index);
+            while ((word & mask) == 0 && !bloom.compareAndSet(index, word, word | mask)) {
+                word = bloom.get(index);
+            }
+        }
     }
 
-    public static synchronized boolean containsLink(String link) {
-        return linksHash.contains(link);
+    private boolean bloomContains(long fingerprint) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = bloomBit(fingerprint, i);
+            if ((bloom.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public static void clear() {
-        linksHash.clear();
+    private static int bloomBit(long fingerprint, int i) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32);
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % BLOOM_BITS;
+    }
+
+    /**
+     * 64-битный отпечаток строки (FNV-1a с финальным перемешиванием).
+     * Значение 0 зарезервировано под пустую ячейку таблицы.
+     */
+    private static long fingerprint(String link) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < link.length(); i++) {
+            h ^= link.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Сегмент таблицы отпечатков с открытой адресацией
+     */
+    private static class Segment {
+        private long[] table = new long[SEGMENT_CAPACITY];
+        private int size = 0;
+
+        synchronized boolean add(long fingerprint) {
+            if (indexOf(table, fingerprint) >= 0) {
+                return false;
+            }
+            if ((size + 1) * 4 > table.length * 3) {
+                resize();
+            }
+            insert(table, fingerprint);
+            size++;
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            return indexOf(table, fingerprint) >= 0;
+        }
+
+        private void resize() {
+            long[] newTable = new long[table.length * 2];
+            for (long fingerprint : table) {
+                if (fingerprint != 0) {
+                    insert(newTable, fingerprint);
+                }
+            }
+            table = newTable;
+        }
+
+        private static int indexOf(long[] table, long fingerprint) {
+            int mask = table.length - 1;
+            for (int i = (int) fingerprint & mask; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == fingerprint) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void insert(long[] table, long fingerprint) {
+            int mask = table.length - 1;
+            int i = (int) fingerprint & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = fingerprint;
+        }
     }
 }
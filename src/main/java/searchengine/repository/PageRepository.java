@@ -1,7 +1,33 @@
 package searchengine.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Page;
+import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface PageRepository extends JpaRepository<Page, Integer> {
+
+    /**
+     * Страницы сайта с указанными кодами ответа, которые еще не лемматизированы:
+     * позиции слов не записаны и записей в индексе нет. Страницы без лемм после
+     * лемматизации получают пустой список позиций и повторно не выбираются.
+     * Страницы выбираются по возрастанию id, начиная после afterId.
+     */
+    @Query("select p from Page p where p.site = :site and p.code in :codes and p.id > :afterId " +
+            "and p.tokenOffsets is null " +
+            "and not exists (select i.id from IndexEntity i where i.page = p) order by p.id")
+    List<Page> findUnindexedBySite(@Param("site") Site site, @Param("codes") Collection<Integer> codes,
+                                   @Param("afterId") int afterId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Page p where p.site = :site")
+    int deleteBySite(@Param("site") Site site);
 }
@@ -0,0 +1,404 @@
+package searchengine.repository;
+
+import java.util.Arrays;
+
+/**
+ * Сжатый список страниц одной леммы сайта (posting list). Пары (id страницы,
+ * количество упоминаний) хранятся по возрастанию id в одном массиве байт:
+ * разность с предыдущим id и количество записываются в формате varint.
+ * Новые страницы получают возрастающие id, поэтому добавление обычно
+ * дописывает пару в конец массива, не распаковывая список.
+ * Список разбит на блоки по BLOCK_SIZE пар, для каждого блока хранится указатель
+ * пропуска (id страницы перед блоком и смещение блока в массиве), что позволяет
+ * при пересечении списков распаковывать только блоки, где могут быть нужные страницы.
+ * Страницы, добавленные не по порядку, и удаленные страницы не перепаковывают массив,
+ * а накапливаются в небольшой дельте (отсортированные массивы добавленных и удаленных id),
+ * которая учитывается при пересечении и распаковке. Когда дельта превышает DELTA_LIMIT
+ * пар или восьмую часть списка, список перепаковывается вместе с ней.
+ */
+public class PostingList {
+    private static final int BLOCK_SIZE = 64;
+    private static final int DELTA_LIMIT = 64;
+
+    private byte[] data = new byte[16];
+    private int length = 0;
+    // количество пар в data
+    private int baseSize = 0;
+    private int lastPageId = 0;
+    // id страницы, предшествующей блоку (0 для первого блока)
+    private int[] skipPageIds = new int[1];
+    // смещение первой пары блока в data
+    private int[] skipOffsets = new int[1];
+    // дельта: страницы не больше lastPageId, добавленные после упаковки (заменяют пару из data)
+    private int[] addedIds = new int[0];
+    private int[] addedCounts = new int[0];
+    private int addedSize = 0;
+    // дельта: страницы из data, удаленные после упаковки
+    private int[] removedIds = new int[0];
+    private int removedSize = 0;
+    // количество страниц в списке с учетом дельты
+    private int size = 0;
+
+    /**
+     * Распакованный список страниц
+     * @param pageIds id страниц по возрастанию
+     * @param counts количество упоминаний леммы на странице
+     */
+    public record Postings(int[] pageIds, int[] counts) {
+        public int size() {
+            return pageIds.length;
+        }
+    }
+
+    /**
+     * Добавляет страницу или заменяет количество упоминаний, если страница уже есть
+     * @param pageId id страницы
+     * @param count количество упоминаний леммы на странице
+     */
+    public synchronized void add(int pageId, int count) {
+        if (pageId > lastPageId) {
+            append(pageId - lastPageId, count);
+            lastPageId = pageId;
+            baseSize++;
+            size++;
+            return;
+        }
+        int added = Arrays.binarySearch(addedIds, 0, addedSize, pageId);
+        if (added >= 0) {
+            addedCounts[added] = count;
+            return;
+        }
+        int removed = Arrays.binarySearch(removedIds, 0, removedSize, pageId);
+        if (removed >= 0) {
+            removedSize = delete(removedIds, removedSize, removed);
+        } else if (baseContains(pageId)) {
+            size--;
+        }
+        insertAdded(-added - 1, pageId, count);
+        size++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Удаляет страницу из списка
+     * @param pageId id страницы
+     * @return boolean true - страница была в списке
+     */
+    public synchronized boolean remove(int pageId) {
+        int added = Arrays.binarySearch(addedIds, 0, addedSize, pageId);
+        boolean present = added >= 0;
+        if (present) {
+            addedSize = delete(addedIds, addedSize, added);
+            System.arraycopy(addedCounts, added + 1, addedCounts, added, addedSize - added);
+        }
+        if (baseContains(pageId)) {
+            int removed = Arrays.binarySearch(removedIds, 0, removedSize, pageId);
+            if (removed < 0) {
+                insertRemoved(-removed - 1, pageId);
+                present = true;
+            }
+        }
+        if (!present) {
+            return false;
+        }
+        size--;
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Пересекает список с отсортированным по возрастанию списком id страниц.
+     * Для каждого id галопирующим поиском по указателям пропуска находится блок,
+     * который может его содержать, распаковываются только такие блоки.
+     * Найденные в data страницы объединяются с дельтой.
+     * @param pageIds id страниц по возрастанию
+     * @return Postings страницы из pageIds, которые есть в списке, с количеством упоминаний
+     */
+    public synchronized Postings retain(int[] pageIds) {
+        Postings base = retainBase(pageIds);
+        if (addedSize == 0 && removedSize == 0) {
+            return base;
+        }
+        int[] ids = new int[Math.min(pageIds.length, addedSize)];
+        int[] counts = new int[ids.length];
+        int count = 0;
+        for (int i = 0, j = 0; i < pageIds.length && j < addedSize; ) {
+            if (pageIds[i] < addedIds[j]) {
+                i++;
+            } else if (pageIds[i] > addedIds[j]) {
+                j++;
+            } else {
+                ids[count] = addedIds[j];
+                counts[count++] = addedCounts[j];
+                i++;
+                j++;
+            }
+        }
+        return merge(base.pageIds(), base.counts(), base.size(), ids, counts, count);
+    }
+
+    /**
+     * @return Postings распакованная копия списка
+     */
+    public synchronized Postings read() {
+        Postings base = decode();
+        if (addedSize == 0 && removedSize == 0) {
+            return base;
+        }
+        return merge(base.pageIds(), base.counts(), base.size(), addedIds, addedCounts, addedSize);
+    }
+
+    /**
+     * @return int количество страниц в списке
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return int размер сжатого списка вместе с дельтой, байт
+     */
+    public synchronized int byteSize() {
+        return length + addedSize * 2 * Integer.BYTES + removedSize * Integer.BYTES;
+    }
+
+    private Postings retainBase(int[] pageIds) {
+        int[] foundIds = new int[Math.min(pageIds.length, baseSize)];
+        int[] foundCounts = new int[foundIds.length];
+        int found = 0;
+        int blocks = (baseSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blockIds = new int[BLOCK_SIZE];
+        int[] blockCounts = new int[BLOCK_SIZE];
+        int block = -1; // распакованный блок
+        int blockSize = 0;
+        int pos = 0; // текущая позиция в распакованном блоке
+        int from = 0; // блок, с которого начинается поиск следующего id
+        for (int i = 0; i < pageIds.length && from < blocks; i++) {
+            int pageId = pageIds[i];
+            if (pageId <= skipPageIds[from]) {
+                continue;
+            }
+            // последний блок b >= from, для которого skipPageIds[b] < pageId
+            int step = 1;
+            int low = from;
+            int high = from + 1;
+            while (high < blocks && skipPageIds[high] < pageId) {
+                low = high;
+                step <<= 1;
+                high = Math.min(blocks, low + step);
+            }
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+                if (skipPageIds[mid] < pageId) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            from = low;
+            if (block != low) {
+                block = low;
+                blockSize = decodeBlock(block, blockIds, blockCounts);
+                pos = 0;
+            }
+            while (pos < blockSize && blockIds[pos] < pageId) {
+                pos++;
+            }
+            if (pos < blockSize && blockIds[pos] == pageId) {
+                foundIds[found] = pageId;
+                foundCounts[found] = blockCounts[pos];
+                found++;
+                pos++;
+            }
+        }
+        return new Postings(Arrays.copyOf(foundIds, found), Arrays.copyOf(foundCounts, found));
+    }
+
+    /**
+     * Объединяет страницы из data (без удаленных) со страницами дельты,
+     * количество упоминаний из дельты заменяет количество из data
+     */
+    private Postings merge(int[] baseIds, int[] baseCounts, int baseCount,
+                           int[] deltaIds, int[] deltaCounts, int deltaCount) {
+        int[] pageIds = new int[baseCount + deltaCount];
+        int[] counts = new int[pageIds.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        int r = 0;
+        while (i < baseCount || j < deltaCount) {
+            if (j == deltaCount || (i < baseCount && baseIds[i] < deltaIds[j])) {
+                int pageId = baseIds[i];
+                while (r < removedSize && removedIds[r] < pageId) {
+                    r++;
+                }
+                if (r == removedSize || removedIds[r] != pageId) {
+                    pageIds[count] = pageId;
+                    counts[count++] = baseCounts[i];
+                }
+                i++;
+            } else {
+                if (i < baseCount && baseIds[i] == deltaIds[j]) {
+                    i++;
+                }
+                pageIds[count] = deltaIds[j];
+                counts[count++] = deltaCounts[j];
+                j++;
+            }
+        }
+        return new Postings(Arrays.copyOf(pageIds, count), Arrays.copyOf(counts, count));
+    }
+
+    private boolean baseContains(int pageId) {
+        if (pageId > lastPageId || baseSize == 0) {
+            return false;
+        }
+        int blocks = (baseSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int low = 0;
+        int high = blocks;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (skipPageIds[mid] < pageId) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        int[] blockIds = new int[BLOCK_SIZE];
+        int blockSize = decodeBlock(low, blockIds, new int[BLOCK_SIZE]);
+        return Arrays.binarySearch(blockIds, 0, blockSize, pageId) >= 0;
+    }
+
+    private void insertAdded(int index, int pageId, int count) {
+        if (addedSize == addedIds.length) {
+            addedIds = Arrays.copyOf(addedIds, Math.max(4, addedSize * 2));
+            addedCounts = Arrays.copyOf(addedCounts, addedIds.length);
+        }
+        System.arraycopy(addedIds, index, addedIds, index + 1, addedSize - index);
+        System.arraycopy(addedCounts, index, addedCounts, index + 1, addedSize - index);
+        addedIds[index] = pageId;
+        addedCounts[index] = count;
+        addedSize++;
+    }
+
+    private void insertRemoved(int index, int pageId) {
+        if (removedSize == removedIds.length) {
+            removedIds = Arrays.copyOf(removedIds, Math.max(4, removedSize * 2));
+        }
+        System.arraycopy(removedIds, index, removedIds, index + 1, removedSize - index);
+        removedIds[index] = pageId;
+        removedSize++;
+    }
+
+    private static int delete(int[] array, int size, int index) {
+        System.arraycopy(array, index + 1, array, index, size - index - 1);
+        return size - 1;
+    }
+
+    private void compactIfNeeded() {
+        if (addedSize + removedSize <= Math.max(DELTA_LIMIT, baseSize / 8)) {
+            return;
+        }
+        Postings postings = read();
+        encode(postings.pageIds(), postings.counts(), postings.size());
+        addedIds = new int[0];
+        addedCounts = new int[0];
+        addedSize = 0;
+        removedIds = new int[0];
+        removedSize = 0;
+    }
+
+    private int decodeBlock(int block, int[] pageIds, int[] counts) {
+        int count = Math.min(BLOCK_SIZE, baseSize - block * BLOCK_SIZE);
+        int pos = skipOffsets[block];
+        int pageId = skipPageIds[block];
+        for (int i = 0; i < count; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            pageId += value;
+            pageIds[i] = pageId;
+            value = 0;
+            shift = 0;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            counts[i] = value;
+        }
+        return count;
+    }
+
+    private Postings decode() {
+        int[] pageIds = new int[baseSize];
+        int[] counts = new int[baseSize];
+        int pos = 0;
+        int pageId = 0;
+        for (int i = 0; i < baseSize; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            pageId += value;
+            pageIds[i] = pageId;
+            value = 0;
+            shift = 0;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            counts[i] = value;
+        }
+        return new Postings(pageIds, counts);
+    }
+
+    private void encode(int[] pageIds, int[] counts, int count) {
+        data = new byte[Math.max(16, count * 3)];
+        length = 0;
+        baseSize = 0;
+        lastPageId = 0;
+        for (int i = 0; i < count; i++) {
+            append(pageIds[i] - lastPageId, counts[i]);
+            lastPageId = pageIds[i];
+            baseSize++;
+        }
+        size = count;
+    }
+
+    private void append(int delta, int count) {
+        if (baseSize % BLOCK_SIZE == 0) {
+            int block = baseSize / BLOCK_SIZE;
+            if (block == skipPageIds.length) {
+                skipPageIds = Arrays.copyOf(skipPageIds, block * 2);
+                skipOffsets = Arrays.copyOf(skipOffsets, block * 2);
+            }
+            skipPageIds[block] = lastPageId;
+            skipOffsets[block] = length;
+        }
+        if (data.length - length < 10) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        length = writeVarInt(data, length, delta);
+        length = writeVarInt(data, length, count);
+    }
+
+    private static int writeVarInt(byte[] buffer, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+}
@@ -8,6 +8,11 @@ import org.jsoup.HttpStatusException;
 import org.jsoup.nodes.Document;
 import org.springframework.http.HttpStatus;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 @Setter
 @Getter
 @AllArgsConstructor
@@ -15,4 +20,14 @@ import org.springframework.http.HttpStatus;
 public class HtmlParseResponse {
     private Document document;
     private int status;
+    private String etag;
+    private String lastModified;
+    // SHA-256 тела ответа в том виде, в каком его вернул сайт
+    private String contentHash;
+    // данные, извлеченные из документа при загрузке
+    private String title = "";
+    // текст заголовков h1-h6 в порядке следования
+    private List<String> headings = new ArrayList<>();
+    private String text = "";
+    private Set<String> links = new LinkedHashSet<>();
 }
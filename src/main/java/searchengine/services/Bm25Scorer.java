@@ -0,0 +1,49 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchCfg;
+import searchengine.repository.InvertedIndex;
+
+/**
+ * Оценка BM25: для каждой леммы запроса
+ * idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * длина / средняя длина)),
+ * где idf = ln(1 + (N - df + 0.5) / (df + 0.5)). В отличие от суммы упоминаний,
+ * частые леммы весят меньше редких, а длинные страницы не получают преимущества
+ * только за счет объема текста.
+ */
+@Component("bm25")
+public class Bm25Scorer implements RelevanceScorer {
+    private final double k1;
+    private final double b;
+
+    public Bm25Scorer(SearchCfg cfg) {
+        this.k1 = cfg.getBm25K1();
+        this.b = cfg.getBm25B();
+    }
+
+    @Override
+    public double[] score(InvertedIndex.Match match) {
+        int size = match.size();
+        double[] scores = new double[size];
+        if (size == 0) {
+            return scores;
+        }
+        // знаменатель без tf зависит только от длины страницы, считается один раз
+        double[] norm = new double[size];
+        int[] lengths = match.lengths();
+        double lengthFactor = match.averageLength() > 0 ? b / match.averageLength() : 0;
+        for (int i = 0; i < size; i++) {
+            norm[i] = k1 * (1 - b + lengthFactor * lengths[i]);
+        }
+        for (int t = 0; t < match.counts().length; t++) {
+            int df = match.frequencies()[t];
+            double idf = Math.log(1 + (match.pageCount() - df + 0.5) / (df + 0.5));
+            double weight = idf * (k1 + 1);
+            int[] tf = match.counts()[t];
+            for (int i = 0; i < size; i++) {
+                scores[i] += weight * tf[i] / (tf[i] + norm[i]);
+            }
+        }
+        return scores;
+    }
+}
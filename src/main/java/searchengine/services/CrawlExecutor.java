@@ -0,0 +1,66 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.JsopConnectionCfg;
+import searchengine.model.Site;
+import searchengine.repository.FrontierRepository;
+import searchengine.util.RobotsRules;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий для всех сайтов пул потоков обхода страниц. Пул рассчитан на блокирующий
+ * сетевой ввод-вывод, его размер задается параметром jsop-cfg.crawl-threads.
+ * Обход каждого сайта ведется в рамках отдельной сессии {@link CrawlSession}.
+ */
+@Slf4j
+@Component
+public class CrawlExecutor {
+    private final ExecutorService workers;
+    private final HostPolitenessScheduler scheduler;
+    private final FrontierRepository frontierRepository;
+    private final SiteSeedService siteSeedService;
+    private final int frontierWindow;
+
+    public CrawlExecutor(JsopConnectionCfg jsopConnectionCfg,
+                         HostPolitenessScheduler scheduler,
+                         FrontierRepository frontierRepository,
+                         SiteSeedService siteSeedService) {
+        this.scheduler = scheduler;
+        this.frontierRepository = frontierRepository;
+        this.siteSeedService = siteSeedService;
+        this.frontierWindow = jsopConnectionCfg.getFrontierWindow();
+        if (frontierWindow < 1) {
+            throw new IllegalArgumentException("jsop-cfg.frontier-window must be >= 1: " + frontierWindow);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(jsopConnectionCfg.getCrawlThreads(), r -> {
+            Thread thread = new Thread(r, "crawl-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Создает сессию обхода сайта. Загружает robots.txt сайта: запрещенные адреса
+     * не попадают в очередь обхода, Crawl-delay передается планировщику.
+     * @param site сайт, для которого ведется обход
+     * @param rootUrl корневой адрес сайта    ex: http://site.com
+     * @return CrawlSession новая сессия
+     */
+    public CrawlSession newSession(Site site, String rootUrl) {
+        RobotsRules robots = siteSeedService.getRobotsRules(rootUrl);
+        scheduler.setCrawlDelay(rootUrl, robots.getCrawlDelay());
+        return new CrawlSession(site, rootUrl, workers, scheduler, frontierRepository,
+                siteSeedService, robots, frontierWindow);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,300 @@
+package searchengine.services;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import searchengine.model.FrontierLink;
+import searchengine.model.FrontierStatus;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repository.FrontierRepository;
+import searchengine.repository.LinkStorage;
+import searchengine.response.PageScannerResponse;
+import searchengine.util.RobotsRules;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Сессия обхода одного сайта. Найденные ссылки записываются в таблицу frontier,
+ * в памяти находится не более frontier-window задач, остальные ждут в таблице и
+ * подгружаются по мере выполнения. Состояние каждой ссылки (QUEUED/FETCHED/FAILED)
+ * сохраняется, поэтому прерванный обход можно продолжить.
+ * Ссылки подгружаются по состоянию: каждый раз выбираются ссылки QUEUED с наименьшими id,
+ * кроме уже взятых в работу. Потоки обхода сохраняют ссылки параллельно и id видны
+ * только после фиксации транзакции, поэтому ссылка с меньшим id может появиться
+ * в таблице позже ссылки с большим id и не должна быть пропущена.
+ * Сессия ведет точный счет задач в памяти и завершается, когда задач не осталось
+ * ни в памяти, ни в таблице.
+ * Адреса, запрещенные robots.txt сайта, в очередь не добавляются. Новый обход
+ * начинается с корневой страницы и адресов из sitemap.xml.
+ */
+@Slf4j
+public class CrawlSession {
+    private static final int RESTORE_BATCH_SIZE = 10000;
+
+    private final Site site;
+    private final String rootUrl;
+    private final ExecutorService workers;
+    private final HostPolitenessScheduler scheduler;
+    private final FrontierRepository frontierRepository;
+    private final SiteSeedService siteSeedService;
+    private final RobotsRules robots;
+    private final int window;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Function<FrontierLink, PageScannerService> taskFactory;
+    // количество задач в памяти (в очереди планировщика или выполняющихся), guarded by this
+    private int outstanding = 0;
+    // id ссылок, взятых в работу (в очереди планировщика или выполняющихся), guarded by this
+    private final Set<Integer> claimed = new HashSet<>();
+    // запросы на подгрузку ссылок, подгрузку выполняет один поток за раз
+    private final AtomicInteger pumpRequests = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    // посещенные ссылки сайта, у каждой сессии свои
+    @Getter
+    private final LinkStorage linkStorage = new LinkStorage();
+    @Getter
+    private volatile PageScannerResponse rootResponse;
+    // получатель сохраненных страниц (конвейер лемматизации)
+    private volatile Consumer<Page> pageSink = page -> { };
+
+    CrawlSession(Site site, String rootUrl, ExecutorService workers,
+                 HostPolitenessScheduler scheduler, FrontierRepository frontierRepository,
+                 SiteSeedService siteSeedService, RobotsRules robots, int window) {
+        this.site = site;
+        this.rootUrl = rootUrl;
+        this.workers = workers;
+        this.scheduler = scheduler;
+        this.frontierRepository = frontierRepository;
+        this.siteSeedService = siteSeedService;
+        this.robots = robots;
+        this.window = window;
+    }
+
+    /**
+     * Начинает обход сайта с корневой страницы и адресов из sitemap.xml
+     * @param taskFactory создает задачу обхода для ссылки очереди
+     */
+    public void start(Function<FrontierLink, PageScannerService> taskFactory) {
+        this.taskFactory = taskFactory;
+        enqueue(List.of(rootUrl));
+        enqueue(siteSeedService.loadSitemapUrls(rootUrl, robots));
+        pumpOrComplete();
+    }
+
+    /**
+     * Продолжает прерванный обход: восстанавливает посещенные ссылки из таблицы
+     * frontier и выполняет ссылки в состоянии QUEUED.
+     * @param taskFactory создает задачу обхода для ссылки очереди
+     */
+    public void resume(Function<FrontierLink, PageScannerService> taskFactory) {
+        this.taskFactory = taskFactory;
+        int lastId = 0;
+        int restored = 0;
+        List<FrontierLink> batch;
+        do {
+            batch = frontierRepository.findBySiteAndIdGreaterThanOrderByIdAsc(
+                    site, lastId, PageRequest.of(0, RESTORE_BATCH_SIZE));
+            for (FrontierLink link : batch) {
+                linkStorage.addLink(link.getUrl());
+                lastId = link.getId();
+                restored++;
+            }
+        } while (batch.size() == RESTORE_BATCH_SIZE);
+        log.info("Продолжение обхода сайта {}, восстановлено ссылок: {}", rootUrl, restored);
+        pumpOrComplete();
+    }
+
+    /**
+     * Добавляет в очередь обхода ссылки, которые еще не встречались в сессии
+     * @param urls абсолютные адреса страниц
+     */
+    public void enqueue(Collection<String> urls) {
+        Map<String, String> links = new LinkedHashMap<>();
+        for (String url : urls) {
+            links.put(url, null);
+        }
+        enqueue(links);
+    }
+
+    /**
+     * Добавляет в очередь обхода ссылки с датой изменения из sitemap
+     * @param urls абсолютный адрес страницы -> lastmod (может быть null)
+     */
+    public void enqueue(Map<String, String> urls) {
+        if (cancelled) {
+            return;
+        }
+        List<FrontierLink> links = new ArrayList<>();
+        for (Map.Entry<String, String> entry : urls.entrySet()) {
+            String url = entry.getKey();
+            if (robots.isAllowed(url, rootUrl) && linkStorage.addLink(url)) {
+                links.add(new FrontierLink(site, url, entry.getValue()));
+            }
+        }
+        if (!links.isEmpty()) {
+            frontierRepository.saveAll(links);
+        }
+    }
+
+    /**
+     * Устанавливает получателя страниц, сохраненных в ходе обхода
+     * @param pageSink получатель страниц, например конвейер лемматизации
+     */
+    public void setPageSink(Consumer<Page> pageSink) {
+        this.pageSink = pageSink;
+    }
+
+    /**
+     * Передает сохраненную страницу получателю. Может ожидать, пока получатель
+     * не освободит место в своей очереди.
+     * @param page сохраненная страница
+     */
+    public void pageSaved(Page page) {
+        pageSink.accept(page);
+    }
+
+    /**
+     * Отменяет задачи, ожидающие в очереди планировщика. Ссылки остаются в таблице
+     * в состоянии QUEUED, задачи, которые уже выполняются, будут завершены.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        outstanding -= scheduler.cancel(rootUrl);
+        if (outstanding == 0) {
+            completion.complete(null);
+        }
+    }
+
+    /**
+     * Ожидает завершения всех задач сессии
+     */
+    public void await() {
+        completion.join();
+    }
+
+    /**
+     * Подгружает ссылки из таблицы, когда в памяти осталось меньше половины окна.
+     * Если загружать нечего и задач в памяти нет, сессия завершается.
+     * Запрос к таблице выполняет один поток, вызовы из других потоков во время
+     * подгрузки учитываются счетчиком и приводят к повторной подгрузке.
+     */
+    private void pumpOrComplete() {
+        if (pumpRequests.getAndIncrement() > 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            pump();
+            requests = pumpRequests.addAndGet(-requests);
+        } while (requests > 0);
+    }
+
+    private void pump() {
+        boolean idle;
+        synchronized (this) {
+            if (cancelled || outstanding > window / 2) {
+                completeIfIdle();
+                return;
+            }
+            // задачи в памяти завершаются только уменьшением outstanding,
+            // если их нет до запроса, все ссылки сессии уже зафиксированы в таблице
+            idle = outstanding == 0;
+        }
+        // взятые в работу ссылки остаются QUEUED до завершения, поэтому выбирается целое окно
+        List<FrontierLink> batch = frontierRepository.findBySiteAndStatusOrderByIdAsc(
+                site, FrontierStatus.QUEUED, PageRequest.of(0, window));
+        synchronized (this) {
+            for (FrontierLink link : batch) {
+                if (cancelled || outstanding >= window) {
+                    break;
+                }
+                if (claimed.add(link.getId())) {
+                    outstanding++;
+                    scheduler.submit(rootUrl, done -> execute(link, done));
+                }
+            }
+            if (idle || cancelled) {
+                completeIfIdle();
+            }
+        }
+    }
+
+    private synchronized void completeIfIdle() {
+        if (outstanding == 0) {
+            completion.complete(null);
+        }
+    }
+
+    /**
+     * @param processed false - ссылка осталась в состоянии QUEUED и не должна
+     *                  повторно браться в работу в этой сессии
+     */
+    private void taskDone(FrontierLink link, boolean processed) {
+        synchronized (this) {
+            outstanding--;
+            if (processed) {
+                claimed.remove(link.getId());
+            }
+        }
+        pumpOrComplete();
+    }
+
+    /**
+     * @param done сообщает планировщику, что запрос к хосту завершен
+     */
+    private void execute(FrontierLink link, Runnable done) {
+        try {
+            workers.execute(() -> {
+                boolean processed = false;
+                try {
+                    processed = run(link);
+                } finally {
+                    done.run();
+                    taskDone(link, processed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.error("Пул обхода не принял задачу сайта {}", rootUrl);
+            done.run();
+            taskDone(link, false);
+        }
+    }
+
+    /**
+     * @return boolean true - состояние ссылки в таблице изменено
+     */
+    private boolean run(FrontierLink link) {
+        FrontierStatus status = FrontierStatus.FAILED;
+        try {
+            PageScannerService task = taskFactory.apply(link);
+            task.run();
+            PageScannerResponse response = task.getResponse();
+            if (link.getUrl().equals(rootUrl)) {
+                rootResponse = response;
+            }
+            if (response.getStatus() == PageScannerResponse.status.STOPPED) {
+                // страница не загружена, оставляем ее в очереди для продолжения обхода
+                return false;
+            }
+            if (response.getStatus() != PageScannerResponse.status.ERROR) {
+                status = FrontierStatus.FETCHED;
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при обходе страницы {}", link.getUrl(), e);
+        }
+        frontierRepository.updateStatus(link.getId(), status);
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.JsopConnectionCfg;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Планировщик запросов к сайтам с соблюдением паузы между обращениями к одному хосту.
+ * Задачи каждого хоста (ключ - корневой url) складываются в отдельную очередь и
+ * выдаются на выполнение по таймеру по одной: следующая задача хоста выдается
+ * через min-delay..max-delay после того, как предыдущая сообщила о завершении запроса,
+ * поэтому медленный ответ не перекрывается следующим запросом к тому же хосту.
+ * Потоки обхода при этом не блокируются ожиданием.
+ */
+@Slf4j
+@Component
+public class HostPolitenessScheduler {
+    private final ScheduledExecutorService timer;
+    private final ConcurrentHashMap<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final JsopConnectionCfg jsopConnectionCfg;
+
+    private static class HostQueue {
+        private final ConcurrentLinkedQueue<Consumer<Runnable>> tasks = new ConcurrentLinkedQueue<>();
+        // true - задача хоста ожидает таймера или выполняется
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final AtomicInteger pending = new AtomicInteger();
+        // время завершения последнего запроса к хосту
+        private volatile long lastCompletion = 0;
+        // Crawl-delay из robots.txt сайта, мс
+        private volatile long crawlDelay = 0;
+    }
+
+    public HostPolitenessScheduler(JsopConnectionCfg jsopConnectionCfg) {
+        this.jsopConnectionCfg = jsopConnectionCfg;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "host-politeness-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит задачу в очередь хоста. Задача будет выполнена в потоке таймера,
+     * поэтому должна быть короткой (например, передача задачи в пул потоков).
+     * Задача получает функцию завершения, которую должна вызвать, когда запрос
+     * к хосту выполнен; до этого следующая задача хоста не выдается.
+     * @param rootUrl корневой адрес сайта    ex: http://site.com
+     * @param task задача, выполняющая запрос к хосту
+     */
+    public void submit(String rootUrl, Consumer<Runnable> task) {
+        HostQueue queue = hosts.computeIfAbsent(rootUrl, k -> new HostQueue());
+        queue.pending.incrementAndGet();
+        queue.tasks.add(task);
+        if (queue.scheduled.compareAndSet(false, true)) {
+            long wait = queue.lastCompletion + nextDelay(queue) - System.currentTimeMillis();
+            schedule(queue, Math.max(0, wait));
+        }
+    }
+
+    /**
+     * Устанавливает минимальную паузу между запросами к хосту (Crawl-delay из robots.txt).
+     * Пауза не может быть меньше интервала min-delay..max-delay из конфигурации.
+     * @param rootUrl корневой адрес сайта
+     * @param crawlDelay пауза, мс
+     */
+    public void setCrawlDelay(String rootUrl, long crawlDelay) {
+        hosts.computeIfAbsent(rootUrl, k -> new HostQueue()).crawlDelay = crawlDelay;
+    }
+
+    /**
+     * Количество задач хоста, ещё не переданных на выполнение
+     * @param rootUrl корневой адрес сайта
+     * @return int количество ожидающих задач
+     */
+    public int getPendingCount(String rootUrl) {
+        HostQueue queue = hosts.get(rootUrl);
+        return queue == null ? 0 : queue.pending.get();
+    }
+
+    /**
+     * Удаляет из очереди хоста все ожидающие задачи
+     * @param rootUrl корневой адрес сайта
+     * @return int количество удаленных задач
+     */
+    public int cancel(String rootUrl) {
+        HostQueue queue = hosts.get(rootUrl);
+        if (queue == null) {
+            return 0;
+        }
+        int count = 0;
+        while (queue.tasks.poll() != null) {
+            queue.pending.decrementAndGet();
+            count++;
+        }
+        return count;
+    }
+
+    private void schedule(HostQueue queue, long delay) {
+        timer.schedule(() -> dispatch(queue), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void dispatch(HostQueue queue) {
+        Consumer<Runnable> task = queue.tasks.poll();
+        if (task == null) {
+            // задачи хоста отменены
+            scheduleNext(queue);
+            return;
+        }
+        queue.pending.decrementAndGet();
+        AtomicBoolean done = new AtomicBoolean(false);
+        Runnable onComplete = () -> {
+            if (done.compareAndSet(false, true)) {
+                completed(queue);
+            }
+        };
+        try {
+            task.accept(onComplete);
+        } catch (Exception e) {
+            log.error("Ошибка при передаче задачи на выполнение", e);
+            onComplete.run();
+        }
+    }
+
+    private void completed(HostQueue queue) {
+        queue.lastCompletion = System.currentTimeMillis();
+        scheduleNext(queue);
+    }
+
+    private void scheduleNext(HostQueue queue) {
+        if (!queue.tasks.isEmpty()) {
+            schedule(queue, nextDelay(queue));
+            return;
+        }
+        queue.scheduled.set(false);
+        // задача могла быть добавлена между проверкой очереди и сбросом флага
+        if (!queue.tasks.isEmpty() && queue.scheduled.compareAndSet(false, true)) {
+            schedule(queue, nextDelay(queue));
+        }
+    }
+
+    private long nextDelay(HostQueue queue) {
+        int min = jsopConnectionCfg.getMinDelay();
+        int max = jsopConnectionCfg.getMaxDelay();
+        long delay = max > min ? ThreadLocalRandom.current().nextInt(min, max) : min;
+        return Math.max(delay, queue.crawlDelay);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -2,7 +2,6 @@ package searchengine.services;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -13,16 +12,35 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.http.HttpStatus;
 import searchengine.AppContextProvider;
 import searchengine.config.JsopConnectionCfg;
+import searchengine.model.Page;
 import searchengine.response.HtmlParseResponse;
+import searchengine.util.HtmlToolsBox;
 import searchengine.util.LinkToolsBox;
+import searchengine.util.PageToolsBox;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.time.Duration;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Сервис для парсинга html страниц.
@@ -31,6 +49,13 @@ import java.util.stream.Collectors;
 @Slf4j
 
 public class HtmlParseService {
+    public static final int NOT_MODIFIED = 304;
+    // закрывает тела ответов, не прочитанные до истечения read-timeout
+    private static final ScheduledExecutorService BODY_DEADLINES = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "crawl-body-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final String url;
     private final String root;
     private final String agent;
@@ -39,18 +64,38 @@ public class HtmlParseService {
     @Getter
     private HtmlParseResponse response;
     private final Set<Integer> validResponseCode;
+    private final JsopConnectionCfg cfg;
+    private final HttpClient httpClient;
+    // ранее сохраненная версия страницы для условного запроса
+    private final Page cachedPage;
 
     public HtmlParseService(String url, String root) {
+        this(url, root, null);
+    }
+
+    /**
+     * @param cachedPage сохраненная ранее страница. Если указана, запрос отправляется
+     *                   с заголовками If-None-Match/If-Modified-Since, а при ответе 304
+     *                   документ строится из сохраненного контента.
+     */
+    public HtmlParseService(String url, String root, Page cachedPage) {
         this.url = url;
+        this.cachedPage = cachedPage;
         this.root = root;
-        JsopConnectionCfg jsopConnectionCfg = (JsopConnectionCfg) AppContextProvider.getBean("jsopConnectionCfg");
-        this.agent  = jsopConnectionCfg.getAgent();
-        this.referrer   = jsopConnectionCfg.getReferrer();
-        this.validResponseCode = jsopConnectionCfg.getValidCodes();
+        this.cfg = (JsopConnectionCfg) AppContextProvider.getBean("jsopConnectionCfg");
+        this.httpClient = (HttpClient) AppContextProvider.getBean("crawlHttpClient");
+        this.agent  = cfg.getAgent();
+        this.referrer   = cfg.getReferrer();
+        this.validResponseCode = cfg.getValidCodes();
     }
 
     /**
-     * Парсит данные из html страницы по указанному url
+     * Парсит данные из html страницы по указанному url.
+     * Статус, заголовки и тело страницы читаются из одного HTTP-запроса общего
+     * клиента crawlHttpClient, тело разбирается только для ответов с Content-Type
+     * text/html и читается не более max-body-size байт. Таймаут HttpRequest ограничивает
+     * только ожидание заголовков, поэтому на весь запрос вместе с чтением тела отводится
+     * read-timeout: по его истечении поток тела закрывается, страница считается недоступной.
      * @return HtmlResponse - содержащий код ответа и Document
      */
     public HtmlParseResponse parse() {
@@ -62,44 +107,161 @@ public class HtmlParseService {
         }
 
         response  = new HtmlParseResponse();
-        int responseCode = checkConnectionOnUrl(url);
-        if (validResponseCode.contains(responseCode)) {
-            try {
-                log.info("[Getting BODY url {}] Status code: {}", url, responseCode);
-                Document document = Jsoup.connect(url)
-                        .userAgent(agent)
-                        .referrer(referrer)
-                        .get();
-                isReady= true;
-                response.setDocument(document);
+        response.setDocument(new Document(""));
+        int responseCode = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cfg.getReadTimeout());
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(LinkToolsBox.toUri(url))
+                    .timeout(Duration.ofMillis(cfg.getReadTimeout()))
+                    .header("User-Agent", agent)
+                    .header("Referer", referrer)
+                    .header("Accept", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.8")
+                    .GET();
+            if (cfg.isCompression()) {
+                request.header("Accept-Encoding", "gzip, deflate");
+            }
+            if (cachedPage != null && cachedPage.getEtag() != null) {
+                request.header("If-None-Match", cachedPage.getEtag());
+            }
+            if (cachedPage != null && cachedPage.getLastModified() != null) {
+                request.header("If-Modified-Since", cachedPage.getLastModified());
+            }
+            HttpResponse<InputStream> httpResponse = httpClient.send(request.build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            // таймер и чтение тела: кто первым установит флаг, тот и определяет результат
+            AtomicBoolean finished = new AtomicBoolean(false);
+            ScheduledFuture<?> abort = BODY_DEADLINES.schedule(() -> {
+                if (finished.compareAndSet(false, true)) {
+                    closeQuietly(httpResponse.body());
+                }
+            }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            try (InputStream body = httpResponse.body()) {
+                HttpHeaders headers = httpResponse.headers();
+                String contentType = headers.firstValue("Content-Type").orElse(null);
+                responseCode = httpResponse.statusCode();
+                response.setEtag(headers.firstValue("ETag").orElse(null));
+                response.setLastModified(headers.firstValue("Last-Modified").orElse(null));
+                if (responseCode == NOT_MODIFIED && cachedPage != null) {
+                    log.info("[Not modified url {}]", url);
+                    response.setDocument(Jsoup.parse(cachedPage.getContent(), url));
+                    HtmlToolsBox.extract(response.getDocument(), response);
+                    response.setEtag(cachedPage.getEtag());
+                    response.setLastModified(cachedPage.getLastModified());
+                    response.setContentHash(cachedPage.getContentHash());
+                }
+                log.debug("Content-Type: {} url {}", contentType, url);
+                if (validResponseCode.contains(responseCode) && !isHtml(contentType)) {
+                    responseCode = 415;
+                }
+                if (validResponseCode.contains(responseCode)) {
+                    log.info("[Getting BODY url {}] Status code: {}", url, responseCode);
+                    InputStream decoded = decode(body, headers.firstValue("Content-Encoding").orElse(""));
+                    byte[] bytes = readLimited(decoded, cfg.getMaxBodySize());
+                    if (!finished.compareAndSet(false, true)) {
+                        // поток закрыт по таймеру, прочитанное тело может быть неполным
+                        throw new HttpTimeoutException("body read timed out");
+                    }
+                    // хеш считается по телу ответа: сериализация Jsoup может меняться
+                    // между версиями и не отражает точно то, что вернул сайт
+                    response.setContentHash(PageToolsBox.contentHash(bytes));
+                    response.setDocument(Jsoup.parse(new ByteArrayInputStream(bytes), charsetOf(contentType), url));
+                    // заголовок, текст и ссылки извлекаются один раз при загрузке страницы
+                    HtmlToolsBox.extract(response.getDocument(), response);
+                }
+            } catch (HttpTimeoutException e) {
+                throw e;
             } catch (IOException e) {
-                log.info("Oшибка при получении данных из {}" + url);
-                e.printStackTrace();
+                if (!finished.compareAndSet(false, true)) {
+                    throw new HttpTimeoutException("body read timed out");
+                }
+                throw e;
+            } finally {
+                abort.cancel(false);
             }
-
-        } else {
+        } catch (HttpTimeoutException e) {
+            log.info("Превышено время ожидания ответа {} мс, url: {}", cfg.getReadTimeout(), url);
+            responseCode = 0;
+            response = new HtmlParseResponse();
             response.setDocument(new Document(""));
+        } catch (IOException | URISyntaxException e) {
+            log.info("IOException: при подключении к url: " + url);
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        isReady = true;
         response.setStatus(responseCode);
         return response;
     }
 
-    private int checkConnectionOnUrl(String url) {
-        int responseCode = 0;
+    /**
+     * Строит ответ из сохраненной страницы без запроса к сайту, как при ответе 304.
+     * Используется, когда по sitemap.xml известно, что страница не изменялась.
+     * @return HtmlParseResponse со статусом NOT_MODIFIED
+     */
+    public HtmlParseResponse parseCached() {
+        response = new HtmlParseResponse();
+        response.setDocument(Jsoup.parse(cachedPage.getContent(), url));
+        HtmlToolsBox.extract(response.getDocument(), response);
+        response.setEtag(cachedPage.getEtag());
+        response.setLastModified(cachedPage.getLastModified());
+        response.setContentHash(cachedPage.getContentHash());
+        response.setStatus(NOT_MODIFIED);
+        isReady = true;
+        return response;
+    }
+
+    private static void closeQuietly(InputStream body) {
         try {
-            HttpURLConnection huc = (HttpURLConnection) new URL(url).openConnection();
-            responseCode = huc.getResponseCode();
-            log.debug("Content-Type: {} url {}", huc.getContentType(), url);
-            if (validResponseCode.contains(responseCode)
-                    && !huc.getHeaderField("Content-Type").contains("text/html")) {
-                responseCode = 415;
-            }
-            huc.disconnect();
-        } catch (IOException e) {
-            log.info("IOException: при подключении к url: " + url);
-            e.printStackTrace();
+            body.close();
+        } catch (IOException ignored) {
+            // поток уже закрыт или соединение разорвано
+        }
+    }
+
+    private boolean isHtml(String contentType) {
+        return contentType != null && contentType.contains("text/html");
+    }
+
+    private InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        String encoding = contentEncoding.strip().toLowerCase();
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(body);
+        } else if (encoding.equals("deflate")) {
+            return new InflaterInputStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * Читает тело ответа не более limit байт, остаток отбрасывается
+     */
+    private byte[] readLimited(InputStream in, int limit) throws IOException {
+        byte[] bytes = in.readNBytes(limit);
+        if (bytes.length == limit) {
+            log.info("Размер страницы {} превышает {} байт, страница обрезана", url, limit);
+        }
+        return bytes;
+    }
+
+    /**
+     * Извлекает кодировку из заголовка Content-Type.
+     * @return String имя кодировки или null, тогда Jsoup определит ее по содержимому
+     */
+    private String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.toLowerCase().indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + 8).split(";")[0].replace("\"", "").strip();
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
         }
-        return responseCode;
     }
 
     /**
@@ -108,15 +270,9 @@ public class HtmlParseService {
      */
     public Set<String> getAllLinksOnPage() {
         if (!isReady) {
-            parse().getDocument();
+            parse();
         }
-        if (response.getDocument() == null) {
-            return new HashSet<>();
-        }
-        Elements links = response.getDocument().select("a[href]");
-
-        Set<String> linkSet = links.stream().map(e -> e.attr("href")).collect(Collectors.toSet());
-        return LinkToolsBox.normalizeLinks(linkSet, root);
+        return LinkToolsBox.normalizeLinks(response.getLinks(), root);
     }
 
 }
@@ -11,7 +11,29 @@ import java.time.LocalDateTime;
 
 public interface IndexService {
     IndexingResponse indexingAllSites();
-    void indexingSite(SiteDto siteDto);
+
+    /**
+     * Повторная индексация всех сайтов без удаления данных. Страницы запрашиваются
+     * условными запросами, не изменившиеся страницы не перезаписываются и
+     * не лемматизируются повторно.
+     * @return IndexingResponse результат запуска
+     */
+    IndexingResponse incrementalIndexingAllSites();
+
+    /**
+     * Индексирует сайт с нуля в отдельном потоке
+     * @param siteDto сайт из конфигурации
+     * @return boolean true - поток индексации запущен
+     */
+    boolean indexingSite(SiteDto siteDto);
+
+    /**
+     * Продолжает прерванную индексацию сайтов из конфигурации по сохраненной очереди
+     * обхода. Сайты без сохраненной очереди индексируются заново, если их индексация
+     * не была завершена.
+     * @return IndexingResponse результат запуска, ошибка - если продолжать нечего
+     */
+    IndexingResponse resumeIndexing();
     IndexingResponse indexingPage(SiteDto siteDto);
     boolean isVisitedLinks(String url);
     LemmaRepository getLemmaRepository();
@@ -19,7 +19,6 @@ import searchengine.repository.SiteRepository;
 import searchengine.util.LinkToolsBox;
 import searchengine.util.SiteToolsBox;
 
-import java.io.IOException;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -42,21 +41,52 @@ public class IndexServiceImpl implements IndexService {
     @Override
     public IndexingResponse indexingAllSites() {
         log.info("Starting indexing all sites");
-        siteService.deleteAllSite();
-        RunIndexMonitor.setIndexingRunning(true);
+        try {
+            siteService.deleteAllSite();
+        } catch (Exception e) {
+            log.error("Ошибка при очистке БД", e);
+            return new IndexingResponse(false, "Ошибка при очистке БД");
+        }
+        boolean started = false;
         List<SiteDto> siteList = sitesList.getSites();
         for (SiteDto siteDto : siteList) {
             log.info(siteDto.toString());
-            indexingSite(siteDto);
+            started |= indexingSite(siteDto);
         }
-        return new IndexingResponse(true, null);
+        return started ? new IndexingResponse(true, null)
+                : new IndexingResponse(false, "Нет сайтов для индексации");
     }
 
     @Override
-    public void indexingSite(SiteDto siteDto) {
+    public IndexingResponse incrementalIndexingAllSites() {
+        log.info("Starting incremental indexing all sites");
+        boolean started = false;
+        for (SiteDto siteDto : sitesList.getSites()) {
+            Site site = siteService.findSite(null, siteDto.getName(), siteDto.getUrl());
+            if (site == null) {
+                started |= indexingSite(siteDto);
+                continue;
+            }
+            log.info("Incremental indexing site {}", siteDto.getUrl());
+            siteService.deleteFrontierBySite(site);
+            site.setStatus(IndexingStatus.INDEXING);
+            site.setStatusTime(LocalDateTime.now());
+            site.setLastError(null);
+            site = siteService.saveSite(site);
+
+            PageDto pageDto = new PageDto(siteDto.getUrl(), siteDto.getUrl(), site);
+            startIndexer(pageDto, ThreadIndexingManager.Mode.INCREMENTAL);
+            started = true;
+        }
+        return started ? new IndexingResponse(true, null)
+                : new IndexingResponse(false, "Нет сайтов для индексации");
+    }
+
+    @Override
+    public boolean indexingSite(SiteDto siteDto) {
         if (!isValidSite(siteDto)) {
             log.info("Site is not valid");
-            return;
+            return false;
         }
 
         // Если данный сайт уже проиндексированы, то удаляем все
@@ -76,8 +106,45 @@ public class IndexServiceImpl implements IndexService {
                 siteDto.getUrl(),
                 site);
 
-        Thread thread = new Thread(new ThreadIndexingManager(pageDto, this));
-        thread.start();
+        startIndexer(pageDto, ThreadIndexingManager.Mode.FULL);
+        return true;
+    }
+
+    @Override
+    public IndexingResponse resumeIndexing() {
+        log.info("Resuming indexing");
+        boolean started = false;
+        for (SiteDto siteDto : sitesList.getSites()) {
+            Site site = siteService.findSite(null, siteDto.getName(), siteDto.getUrl());
+            if (site == null || !siteService.hasQueuedFrontier(site)) {
+                if (site == null || site.getStatus() != IndexingStatus.INDEXED) {
+                    started |= indexingSite(siteDto);
+                }
+                continue;
+            }
+            log.info("Resume site {}", siteDto.getUrl());
+            site.setStatus(IndexingStatus.INDEXING);
+            site.setStatusTime(LocalDateTime.now());
+            site.setLastError(null);
+            site = siteService.saveSite(site);
+
+            PageDto pageDto = new PageDto(siteDto.getUrl(), siteDto.getUrl(), site);
+            startIndexer(pageDto, ThreadIndexingManager.Mode.RESUME);
+            started = true;
+        }
+        return started ? new IndexingResponse(true, null)
+                : new IndexingResponse(false, "Нет прерванной индексации");
+    }
+
+    /**
+     * Запускает индексацию сайта в отдельном потоке. Индексатор регистрируется до
+     * запуска потока, поэтому флаг выполнения индексации установлен, только пока
+     * есть хотя бы один работающий индексатор, и снимается последним из них.
+     */
+    private void startIndexer(PageDto pageDto, ThreadIndexingManager.Mode mode) {
+        ThreadIndexingManager indexer = new ThreadIndexingManager(pageDto, this, mode);
+        RunIndexMonitor.regIndexer(indexer);
+        new Thread(indexer).start();
     }
 
     @Override
@@ -88,7 +155,8 @@ public class IndexServiceImpl implements IndexService {
             return new IndexingResponse(false, "Данная страница находится за пределами сайтов,указанных в конфигурационном файле");
         }
 
-        int code = LinkToolsBox.checkConnectLink(url);
+        HtmlParseResponse htmlParseResponse = new HtmlParseService(url, LinkToolsBox.extractRootDomain(url)).parse();
+        int code = htmlParseResponse.getStatus();
         if (!jsopConnectionCfg.getValidCodes().contains(code)) {
             return new IndexingResponse(false, "Код: " + code + " Ошибка доступа к " + url);
         }
@@ -98,18 +166,20 @@ public class IndexServiceImpl implements IndexService {
             siteService.deletePageByUrl(url);
         }
 
-        HtmlParseResponse htmlParseResponse = new HtmlParseService(url, LinkToolsBox.extractRootDomain(url)).parse();
-        if (jsopConnectionCfg.getValidCodes().contains(htmlParseResponse.getStatus())) {
-            Page page = new Page();
-            page.setPath(LinkToolsBox.getShortUrl(url, LinkToolsBox.extractRootDomain(url)));
-            page.setCode(htmlParseResponse.getStatus());
-            page.setSite(siteService.findSite(null, null, LinkToolsBox.extractRootDomain(url)));
+        Page page = new Page();
+        page.setPath(LinkToolsBox.getShortUrl(url, LinkToolsBox.extractRootDomain(url)));
+        page.setCode(code);
+        page.setSite(siteService.findSite(null, null, LinkToolsBox.extractRootDomain(url)));
 
-            page.setContent(htmlParseResponse.getDocument().toString());
-            page = siteService.savePage(page);
+        page.setContent(htmlParseResponse.getDocument().toString());
+        page.setTitle(htmlParseResponse.getTitle());
+        page.setText(htmlParseResponse.getText());
+        page.setEtag(htmlParseResponse.getEtag());
+        page.setLastModified(htmlParseResponse.getLastModified());
+        page.setContentHash(htmlParseResponse.getContentHash());
+        page = siteService.savePage(page);
 
-            lemmatizePage(page);
-        }
+        lemmatizePage(page);
 
         return new IndexingResponse(true, null);
     }
@@ -119,13 +189,8 @@ public class IndexServiceImpl implements IndexService {
 
     private void lemmatizePage(Page page) {
 
-        try {
-            MorphologyService morphologyService = new MorphologyServiceImpl();
-            morphologyService.processOnePage(page);
-        } catch (IOException e) {
-            log.error("Ошибка при инициализации MorphologyService", e);
-            throw new RuntimeException(e);
-        }
+        MorphologyService morphologyService = new MorphologyServiceImpl();
+        morphologyService.processOnePage(page);
     }
 
       /**
@@ -0,0 +1,55 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.LemmatizationCfg;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Общий для всех сайтов пул потоков лемматизации. Размер пула задается параметром
+ * lemmatization-cfg.parallelism (по умолчанию - количество ядер). Параллельные
+ * потоки, запущенные внутри задачи пула, выполняются в этом же пуле.
+ */
+@Slf4j
+@Component
+public class LemmatizationExecutor {
+    private final ForkJoinPool pool;
+
+    public LemmatizationExecutor(LemmatizationCfg cfg) {
+        int parallelism = cfg.getParallelism() > 0 ? cfg.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("lemmatization-worker-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        log.info("Пул лемматизации: потоков {}", parallelism);
+    }
+
+    /**
+     * Выполняет задачу в пуле лемматизации и ожидает результат
+     * @param task задача, как правило параллельный поток над страницами
+     * @return T результат задачи
+     */
+    public <T> T invoke(Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Лемматизация прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка лемматизации", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
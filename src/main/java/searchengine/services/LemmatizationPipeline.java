@@ -0,0 +1,117 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.AppContextProvider;
+import searchengine.config.LemmatizationCfg;
+import searchengine.model.Page;
+import searchengine.model.Site;
+import searchengine.repository.IndexBulkRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Конвейер лемматизации страниц сайта, работающий одновременно с обходом.
+ * Потоки обхода передают сохраненные страницы в ограниченную очередь, отдельный
+ * поток забирает их пачками по batch-size страниц (или всё, что накопилось за
+ * flush-interval) и записывает леммы и индекс. Пока очередь заполнена, потоки
+ * обхода ждут, поэтому в памяти находится не более queue-capacity страниц.
+ * Лемматизация пачек выполняется в одном потоке, поэтому частоты лемм сайта
+ * обновляются последовательно.
+ */
+@Slf4j
+public class LemmatizationPipeline {
+    // признак завершения очереди
+    private static final Page END = new Page();
+
+    private final Site site;
+    private final MorphologyService morphologyService;
+    private final BlockingQueue<Page> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final Thread worker;
+    private int processed = 0;
+
+    public LemmatizationPipeline(Site site, MorphologyService morphologyService, LemmatizationCfg cfg) {
+        this.site = site;
+        this.morphologyService = morphologyService;
+        this.queue = new ArrayBlockingQueue<>(cfg.getQueueCapacity());
+        this.batchSize = cfg.getBatchSize();
+        this.flushInterval = cfg.getFlushInterval();
+        this.worker = new Thread(this::run, "lemmatizer-" + site.getId());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Передает страницу на лемматизацию. Если очередь заполнена, ожидает места.
+     * @param page сохраненная страница
+     */
+    public void submit(Page page) {
+        try {
+            queue.put(page);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Страница {} не передана на лемматизацию", page.getPath());
+        }
+    }
+
+    /**
+     * Завершает прием страниц и ожидает лемматизации всех страниц из очереди
+     */
+    public void close() {
+        try {
+            queue.put(END);
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Лемматизация страниц сайта {} завершена, обработано страниц: {}", site.getUrl(), processed);
+        MorphologyEngine engine = (MorphologyEngine) AppContextProvider.getBean("morphologyEngine");
+        log.info("Кэш морфологии: словоформ {}, hit rate {}", engine.getCacheSize(),
+                String.format("%.3f", engine.getHitRate()));
+        IndexBulkRepository bulk = (IndexBulkRepository) AppContextProvider.getBean("indexBulkRepository");
+        log.info("Запись индекса: строк {}, {} строк/с", bulk.getRowsWritten(), bulk.getRowsPerSecond());
+    }
+
+    private void run() {
+        List<Page> batch = new ArrayList<>(batchSize);
+        boolean finished = false;
+        while (!finished) {
+            try {
+                Page page = queue.take();
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (page != END) {
+                    batch.add(page);
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0
+                            || (page = queue.poll(wait, TimeUnit.MILLISECONDS)) == null) {
+                        break;
+                    }
+                }
+                finished = page == END;
+            } catch (InterruptedException e) {
+                finished = true;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+            }
+        }
+    }
+
+    private void flush(List<Page> batch) {
+        try {
+            morphologyService.processPages(site, batch);
+            processed += batch.size();
+            log.debug("Сайт {}: лемматизировано страниц {}", site.getUrl(), processed);
+        } catch (Exception e) {
+            // ошибка пачки не должна останавливать конвейер, иначе потоки обхода
+            // будут ждать освобождения очереди
+            log.error("Ошибка лемматизации пачки страниц сайта {}", site.getUrl(), e);
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,170 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Component;
+import searchengine.config.LemmatizationCfg;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общий для приложения морфологический словарь. Слова из русских букв разбираются
+ * русским словарем, из латинских - английским. Словари загружаются один раз,
+ * результаты разбора словоформ (лемма и признак служебной части речи) хранятся
+ * в ограниченном кэше, доступном из любых потоков.
+ * Кэш состоит из двух поколений: новые словоформы записываются в текущее, при его
+ * заполнении (половина morphology-cache-size) текущее поколение становится старым,
+ * а прежнее старое отбрасывается. Найденные в старом поколении словоформы
+ * переносятся в текущее, поэтому часто встречающиеся слова не вытесняются.
+ */
+@Slf4j
+@Component
+public class MorphologyEngine {
+    // служебные части речи русского (междометие, предлог, союз)
+    // и английского (междометие, предлог, союз, артикль, частица) словарей
+    private static final Set<String> particlesNames = Set.of("МЕЖД", "ПРЕДЛ", "СОЮЗ",
+            "INT", "PREP", "CONJ", "ARTICLE", "PART");
+    // словоформа, для которой нет леммы
+    private static final WordForm UNKNOWN = new WordForm(null, true);
+
+    private final LuceneMorphology russianMorphology;
+    private final LuceneMorphology englishMorphology;
+    private final int generationSize;
+    private volatile ConcurrentHashMap<String, WordForm> current = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, WordForm> previous = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Результат разбора словоформы
+     * @param lemma нормальная форма слова, null - слово не разобрано
+     * @param particle true - служебная часть речи (междометие, предлог, союз)
+     */
+    public record WordForm(String lemma, boolean particle) {
+        /**
+         * @return boolean true - слово учитывается в индексе
+         */
+        public boolean isIndexable() {
+            return lemma != null && !particle;
+        }
+    }
+
+    public MorphologyEngine(LemmatizationCfg cfg) throws IOException {
+        this.russianMorphology = new RussianLuceneMorphology();
+        this.englishMorphology = new EnglishLuceneMorphology();
+        this.generationSize = Math.max(1, cfg.getMorphologyCacheSize() / 2);
+    }
+
+    /**
+     * Возвращает лемму и признак части речи словоформы. Словарь выбирается
+     * по алфавиту первой буквы слова.
+     * @param word String слово в нижнем регистре
+     * @return WordForm результат разбора
+     */
+    public WordForm lookup(String word) {
+        ConcurrentHashMap<String, WordForm> cur = current;
+        WordForm form = cur.get(word);
+        if (form != null) {
+            hits.increment();
+            return form;
+        }
+        form = previous.get(word);
+        if (form != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            form = analyze(word);
+        }
+        cur.put(word, form);
+        if (cur.size() > generationSize) {
+            rotate(cur);
+        }
+        return form;
+    }
+
+    public boolean checkString(String text) {
+        return !text.isEmpty() && morphologyOf(text).checkString(text);
+    }
+
+    /**
+     * Проверяет, есть ли среди вариантов разбора слова служебная часть речи.
+     * Вариант разбора имеет вид "слово|код ЧАСТЬ_РЕЧИ граммемы", часть речи
+     * выделяется из строки один раз и сравнивается с набором служебных.
+     * @param morphInfo варианты разбора слова
+     * @return boolean true - служебная часть речи
+     */
+    public boolean hasParticleProperty(List<String> morphInfo) {
+        for (String info : morphInfo) {
+            if (particlesNames.contains(partOfSpeech(info))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String partOfSpeech(String morphInfo) {
+        int start = morphInfo.indexOf(' ', morphInfo.indexOf('|') + 1) + 1;
+        if (start == 0) {
+            return "";
+        }
+        int end = morphInfo.indexOf(' ', start);
+        return morphInfo.substring(start, end < 0 ? morphInfo.length() : end);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return double доля обращений, обслуженных кэшем (0..1)
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public int getCacheSize() {
+        return current.size() + previous.size();
+    }
+
+    private WordForm analyze(String word) {
+        try {
+            LuceneMorphology morphology = morphologyOf(word);
+            List<String> normalForms = morphology.getNormalForms(word);
+            if (normalForms.isEmpty()) {
+                return UNKNOWN;
+            }
+            return new WordForm(normalForms.get(0), hasParticleProperty(morphology.getMorphInfo(word)));
+        } catch (RuntimeException e) {
+            // слово содержит символы, которых нет в словаре
+            return UNKNOWN;
+        }
+    }
+
+    private LuceneMorphology morphologyOf(String word) {
+        char c = word.charAt(0);
+        return c < 128 ? englishMorphology : russianMorphology;
+    }
+
+    private synchronized void rotate(ConcurrentHashMap<String, WordForm> full) {
+        if (current != full) {
+            // поколение уже сменил другой поток
+            return;
+        }
+        previous = full;
+        current = new ConcurrentHashMap<>();
+        log.debug("Кэш морфологии: hit rate {}, обращений {}", String.format("%.3f", getHitRate()),
+                getHits() + getMisses());
+    }
+}
@@ -1,5 +1,6 @@
 package searchengine.services;
 
+import searchengine.dto.index.PageLemmasDto;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
 import searchengine.model.Site;
@@ -9,8 +10,22 @@ import java.util.List;
 
 public interface MorphologyService {
     HashMap<String, Integer> getLemmasStrFromText(String text);
+
+    /**
+     * Лемматизирует текст с сохранением позиций слов
+     * @param text текст страницы
+     * @return PageLemmasDto леммы с порядковыми номерами слов и позиции слов в тексте
+     */
+    PageLemmasDto getLemmasWithPositions(String text);
     void processOnePage(Page page);
     void processSite(Site site);
+
+    /**
+     * Лемматизирует пачку страниц сайта и записывает леммы и индекс
+     * @param site сайт
+     * @param pages сохраненные страницы сайта
+     */
+    void processPages(Site site, List<Page> pages);
     //void process(IndexService indexService, Site site);
     List<String> getWords(String text);
     boolean isNotWord(List<String> words);
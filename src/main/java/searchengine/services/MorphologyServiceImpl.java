@@ -3,45 +3,63 @@ package searchengine.services;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.jsoup.Jsoup;
-import org.jsoup.safety.Safelist;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionTemplate;
 import searchengine.AppContextProvider;
 import searchengine.config.JsopConnectionCfg;
+import searchengine.dto.index.PageLemmasDto;
 import searchengine.dto.index.SiteDto;
 import searchengine.exception.NullArgException;
 import searchengine.model.IndexEntity;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
 import searchengine.model.Site;
+import searchengine.repository.IndexBulkRepository;
 import searchengine.repository.IndexEntityRepository;
+import searchengine.repository.InvertedIndex;
 import searchengine.repository.LemmaRepository;
+import searchengine.util.PageToolsBox;
+import searchengine.util.TransactionToolsBox;
+import searchengine.util.VarIntToolsBox;
+import searchengine.util.WordTokenizer;
 
-import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 
 @Slf4j
 @RequiredArgsConstructor
 @Getter
 public class MorphologyServiceImpl implements MorphologyService {
-    private final LuceneMorphology luceneMorphology;
+    private final MorphologyEngine morphologyEngine;
+    private final LemmatizationExecutor lemmatizationExecutor;
     private final LemmaRepository lemmaRepository;
     private final IndexEntityRepository indexEntityRepository;
+    private final IndexBulkRepository indexBulkRepository;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
     private final SiteService siteService;
+    private final TransactionTemplate transactionTemplate;
+    // слова короче не лемматизируются
+    private static final int MIN_WORD_LENGTH = 3;
+    // количество лемм в одном запросе к БД
+    private static final int LEMMA_QUERY_CHUNK = 1000;
     private static final String WORD_TYPE_REGEX = "\\W\\w&&[^а-яА-Я\\s]";
-    private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
     private Site site;
     private final Set<Integer> validResponseCode;
 
-    public MorphologyServiceImpl() throws IOException {
-        this.luceneMorphology = new RussianLuceneMorphology();
+    public MorphologyServiceImpl() {
+        this.morphologyEngine = (MorphologyEngine) AppContextProvider.getBean("morphologyEngine");
+        this.lemmatizationExecutor = (LemmatizationExecutor) AppContextProvider.getBean("lemmatizationExecutor");
         this.lemmaRepository = (LemmaRepository) AppContextProvider.getBean("lemmaRepository");
         this.indexEntityRepository = (IndexEntityRepository) AppContextProvider.getBean("indexEntityRepository");
+        this.indexBulkRepository = (IndexBulkRepository) AppContextProvider.getBean("indexBulkRepository");
+        this.invertedIndex = (InvertedIndex) AppContextProvider.getBean("invertedIndex");
+        this.searchResultCache = (SearchResultCache) AppContextProvider.getBean("searchResultCache");
         this.siteService = (SiteService) AppContextProvider.getBean("siteServiceImpl");
+        this.transactionTemplate = (TransactionTemplate) AppContextProvider.getBean("transactionTemplate");
         JsopConnectionCfg jsopConnectionCfg = (JsopConnectionCfg) AppContextProvider.getBean("jsopConnectionCfg");
         this.validResponseCode = jsopConnectionCfg.getValidCodes();
     }
@@ -61,112 +79,116 @@ public class MorphologyServiceImpl implements MorphologyService {
         process(pages);
     }
 
+    @Override
+    public void processPages(Site site, List<Page> pages) {
+        this.site = site;
+        process(pages);
+    }
+
     /**
      * Основной метод класса выполняющий обработку всех страниц.
-     * Выделение лемм и создание индекса.
+     * Каждая страница лемматизируется один раз, полученные для страницы леммы
+     * используются и для подсчета frequency, и для создания индекса. Вместе с индексом
+     * сохраняются позиции слов, по которым строятся сниппеты.
+     * Частоты лемм, строки индекса и позиции слов записываются в одной транзакции:
+     * при ошибке страницы остаются без строк индекса и частоты лемм не меняются,
+     * поэтому повторная обработка тех же страниц не увеличивает частоты дважды.
+     * Инвертированный индекс обновляется после фиксации транзакции.
      * @param pages
      */
     private void process(List<Page> pages) {
         try {
-            lemmaRepository.saveAll(makeLemmasListForSave(pages));
-            indexEntityRepository.saveAll(makeIndexListForSave(pages));
+            if (site == null) {
+                throw new NullArgException("Site is null");
+            }
+            Map<Page, PageLemmasDto> lemmasOnPages = lemmatizePages(pages);
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<String, Lemma> savedLemmas = saveLemmas(lemmasOnPages.values());
+                indexBulkRepository.insertIndex(makeIndexListForSave(lemmasOnPages, savedLemmas));
+                indexBulkRepository.updateTokenOffsets(new ArrayList<>(lemmasOnPages.keySet()));
+                TransactionToolsBox.afterCommit(() -> addToInvertedIndex(lemmasOnPages));
+            });
         } catch (Exception e) {
-            log.error("Ошибка в процессе морфологической обработки данных");
-            e.printStackTrace();
+            log.error("Ошибка в процессе морфологической обработки данных сайта {}",
+                    site == null ? null : site.getUrl(), e);
         }
     }
 
     /**
-     * Получает из списка страниц все леммы и подсчитывает их frequency. Создает
-     * объекты Lemma и сохраняет их в Map<String, Lemma>.
-     * @param pages список страниц объекты Page
-     * @return Map<String, Lemma> где ключ - строковое представление леммы
-     *                            value - объект Lemma готовый для сохранения в БД
+     * Добавляет сохраненные в БД страницы в инвертированный индекс поиска,
+     * сохраненные результаты поиска по сайту становятся неактуальными
+     * @param lemmasOnPages леммы каждой страницы
      */
-    private Map<String, Lemma> countLemmasFreqOnAllPages(List<Page> pages) {
-        Map<String, Lemma> mapLemmasOnAllPages = new HashMap<>();
-        for (Page page : pages) {
-            if (!validResponseCode.contains(page.getCode()))
-                continue;
-
-            HashMap<String, Integer> lemmasFromText = getLemmasStrFromText(stripHtml(page.getContent()));
-
-            for (String curLemmaStr : lemmasFromText.keySet()) {
-                Lemma tLemma = new Lemma();
-                if (mapLemmasOnAllPages.containsKey(curLemmaStr)) {
-                    tLemma = mapLemmasOnAllPages.get(curLemmaStr);
-                    tLemma.setFrequency(tLemma.getFrequency() + 1);
-                    mapLemmasOnAllPages.put(curLemmaStr, tLemma);
-                } else {
-                    tLemma.setLemma(curLemmaStr);
-                    tLemma.setFrequency(1);
-                    tLemma.setSite(site);
-                    mapLemmasOnAllPages.put(curLemmaStr, tLemma);
-                }
-            }
-        }
-        return mapLemmasOnAllPages;
+    private void addToInvertedIndex(Map<Page, PageLemmasDto> lemmasOnPages) {
+        lemmasOnPages.forEach((page, pageLemmas) -> {
+            Map<String, Integer> counts = new HashMap<>();
+            pageLemmas.getPositions().forEach((lemma, positions) -> counts.put(lemma, positions.length));
+            invertedIndex.addPage(site.getId(), page.getId(), counts);
+        });
+        searchResultCache.invalidateSite(site.getId());
     }
 
     /**
-     * Получает все леммы из списка страниц переданного на вход, сопоставляет из с БД
-     * на предмет встречемости на странице, при необходимости увеличивает значение
-     * и возвращает List<Lemma> готовый для сохранения в БД
-     * @param pages список страниц объекты Page, из тела которых будут извлекаться леммы
-     *              и подготавливаться к сохранению в БД
-     * @return List<Lemma> готовый для сохранения в БД
-     * @throws Exception если не установлена локальная переменная site, не возможно сохранить
-     * если не установлена локальная переменная site
+     * Лемматизирует страницы с успешным кодом ответа. Страницы распределяются
+     * между потоками пула лемматизации, у каждого потока свой токенизатор,
+     * словарь и кэш словоформ общие.
+     * @param pages список страниц объекты Page
+     * @return Map<Page, PageLemmasDto> страница -> леммы страницы с позициями слов
      */
-    private List<Lemma> makeLemmasListForSave(List<Page> pages) throws Exception {
-        if (site == null) {
-            throw new NullArgException("Site is null");
+    private Map<Page, PageLemmasDto> lemmatizePages(List<Page> pages) {
+        List<Page> validPages = pages.stream()
+                .filter(page -> validResponseCode.contains(page.getCode()))
+                .toList();
+        List<PageLemmasDto> histograms = lemmatizationExecutor.invoke(() -> validPages.parallelStream()
+                .map(page -> getLemmasWithPositions(PageToolsBox.getText(page)))
+                .toList());
+        Map<Page, PageLemmasDto> lemmasOnPages = new LinkedHashMap<>();
+        for (int i = 0; i < validPages.size(); i++) {
+            PageLemmasDto pageLemmas = histograms.get(i);
+            validPages.get(i).setTokenOffsets(VarIntToolsBox.encodeDeltas(
+                    pageLemmas.getTokenOffsets(), pageLemmas.getTokenOffsets().length));
+            lemmasOnPages.put(validPages.get(i), pageLemmas);
         }
-        Map<String, Lemma> mapLemmasOnAllPages = countLemmasFreqOnAllPages(pages);
-        // получаем список всех лемм из БД одним запросом
-        // далее работаем со список лемм (map)
-        HashMap<String, Lemma> mapLemmasInDB = getAllLemmasFromDB(site);
-        List<Lemma> listForSaveOut = new ArrayList<>();
+        return lemmasOnPages;
+    }
 
-        for (String lemmaStr : mapLemmasOnAllPages.keySet()) {
-            Lemma lemma = new Lemma();
-            if (mapLemmasInDB.containsKey(lemmaStr)) {
-                lemma = mapLemmasInDB.get(lemmaStr);
-                lemma.setFrequency(mapLemmasInDB.get(lemmaStr).getFrequency() + lemma.getFrequency());
-                listForSaveOut.add(lemma);
-            } else {
-                lemma.setLemma(lemmaStr);
-                lemma.setFrequency(mapLemmasOnAllPages.get(lemmaStr).getFrequency());
-                lemma.setSite(site);
-                listForSaveOut.add(lemma);
-            }
-        }
-        return listForSaveOut;
+    /**
+     * Подсчитывает frequency лемм (количество страниц, на которых встретилась лемма)
+     * и атомарно добавляет их к сохраненным в БД значениям, отсутствующие леммы
+     * добавляются. Затрагиваются и загружаются из БД только леммы, встретившиеся
+     * на обрабатываемых страницах.
+     * @param lemmasOnPages леммы каждой страницы
+     * @return Map<String, Lemma> где ключ - строковое представление леммы
+     *                            value - сохраненный объект Lemma
+     */
+    private Map<String, Lemma> saveLemmas(Collection<PageLemmasDto> lemmasOnPages) {
+        // частичные суммы каждого потока объединяются без блокировок
+        Map<String, Integer> frequencies = lemmatizationExecutor.invoke(() -> lemmasOnPages.parallelStream()
+                .flatMap(lemmasOnPage -> lemmasOnPage.getPositions().keySet().stream())
+                .collect(Collectors.toMap(Function.identity(), lemmaStr -> 1, Integer::sum)));
+        indexBulkRepository.incrementFrequencies(site, frequencies);
+        // id лемм нужны для строк индекса
+        return findLemmasInDB(frequencies.keySet());
     }
 
     /**
      * Возвращает список сущностей IndexEntity для сохранения в index БД
-     * @param pages список страниц объекты Page
+     * @param lemmasOnPages леммы каждой страницы
+     * @param lemmas сохраненные леммы сайта
      * @return List<IndexEntity> список объектов индекса
-     * @throws Exception
      */
-    private List<IndexEntity> makeIndexListForSave(List<Page> pages) throws Exception {
+    private List<IndexEntity> makeIndexListForSave(Map<Page, PageLemmasDto> lemmasOnPages,
+                                                   Map<String, Lemma> lemmas) {
         log.info("Создание списка индекса сайта {} для сохранения в БД", site.getUrl());
-        List<Lemma> lemmasOnDB = findLemmasByName(null, site);
-        Map<String, Lemma> mapLemmas = new HashMap<>();
-
-        // создаем Map<String, Lemma> для удобства дальнейшей обработки
-        for (Lemma lemma : lemmasOnDB) {
-            mapLemmas.put(lemma.getLemma(), lemma);
-        }
         List<IndexEntity> listForSaveOut = new ArrayList<>(); // список для сохранения в БД
-        for (Page page : pages) {
-            HashMap<String, Integer> lemmasOnPageMap = getLemmasStrFromText(stripHtml(page.getContent()));
-            for (String lemmaStr : lemmasOnPageMap.keySet()) {
+        for (Map.Entry<Page, PageLemmasDto> entry : lemmasOnPages.entrySet()) {
+            for (Map.Entry<String, int[]> lemmaOnPage : entry.getValue().getPositions().entrySet()) {
+                int[] positions = lemmaOnPage.getValue();
                 IndexEntity indexEntity = new IndexEntity();
-                indexEntity.setLemma(mapLemmas.get(lemmaStr));
-                indexEntity.setPage(page);
-                indexEntity.setRank(lemmasOnPageMap.get(lemmaStr).doubleValue());
+                indexEntity.setLemma(lemmas.get(lemmaOnPage.getKey()));
+                indexEntity.setPage(entry.getKey());
+                indexEntity.setRank((double) positions.length);
+                indexEntity.setPositions(VarIntToolsBox.encodeDeltas(positions, positions.length));
                 listForSaveOut.add(indexEntity);
             }
         }
@@ -175,21 +197,22 @@ public class MorphologyServiceImpl implements MorphologyService {
     }
 
     /**
-     * Получить из БД все lemmas для указанного сайта, в key вынесена сама лемма
+     * Получить из БД леммы сайта по списку, в key вынесена сама лемма
      * для удобства дальнейшей обработки
      *
-     * @param site entity-модель Site, если null то все леммы из БД
-     * @return Map<String, Lemma> lemmas относящиеся к данному сайту
+     * @param lemmaNames строковые представления лемм
+     * @return Map<String, Lemma> найденные леммы сайта
      *              <Строковое представление, Lemma-object>
      */
-    private HashMap<String, Lemma> getAllLemmasFromDB(Site site) {
-        Lemma lemEx = new Lemma();
-        lemEx.setSite(siteService.findSite(site.getId(),null,null));
-        List<Lemma> lemmaList = lemmaRepository.findAll(Example.of(lemEx));
-        // переводим List в Map<String, Lemma> для удобства дальнейшей обработки
+    private HashMap<String, Lemma> findLemmasInDB(Collection<String> lemmaNames) {
         HashMap<String, Lemma> lemmaMap = new HashMap<>();
-        for (Lemma lemma : lemmaList) {
-            lemmaMap.put(lemma.getLemma(), lemma);
+        List<String> names = new ArrayList<>(lemmaNames);
+        // запрашиваем частями, чтобы не превышать размер запроса
+        for (int from = 0; from < names.size(); from += LEMMA_QUERY_CHUNK) {
+            List<String> chunk = names.subList(from, Math.min(names.size(), from + LEMMA_QUERY_CHUNK));
+            for (Lemma lemma : lemmaRepository.findBySiteAndLemmaIn(site, chunk)) {
+                lemmaMap.put(lemma.getLemma(), lemma);
+            }
         }
         return lemmaMap;
     }
@@ -210,25 +233,19 @@ public class MorphologyServiceImpl implements MorphologyService {
      */
     @Override
     public HashMap<String, Integer> getLemmasStrFromText(String text) {
-        List<String> words = getWords(text);
+        WordTokenizer tokenizer = WordTokenizer.forCurrentThread();
+        int count = tokenizer.tokenize(text, MIN_WORD_LENGTH);
         HashMap<String, Integer> lemmas = new HashMap<>();
 
-        for (String word : words) {
-            if (word.isEmpty() || word.length() < 3) {
-                continue;
-            }
-            // Проверяем является ли слово служебной частью речи, если да отбрасываем
-            List<String> wordsBaseForm = luceneMorphology.getMorphInfo(word);
-            if (isNotWord(wordsBaseForm)) {
-                continue;
-            }
-
-            List<String> wordsNormalForm = luceneMorphology.getNormalForms(word);
-            if (wordsNormalForm.isEmpty()) {
+        for (int i = 0; i < count; i++) {
+            String word = tokenizer.word(i);
+            // Служебные части речи и неразобранные слова отбрасываем
+            MorphologyEngine.WordForm wordForm = morphologyEngine.lookup(word);
+            if (!wordForm.isIndexable()) {
                 continue;
             }
 
-            String nWord = wordsNormalForm.get(0);
+            String nWord = wordForm.lemma();
 
             if (lemmas.containsKey(nWord)) {
                 lemmas.put(nWord, lemmas.get(nWord) + 1);
@@ -239,28 +256,59 @@ public class MorphologyServiceImpl implements MorphologyService {
         return lemmas;
     }
 
+    /**
+     * Лемматизирует текст страницы, запоминая порядковые номера слов каждой леммы
+     * и позиции всех слов в тексте
+     * @param text String текст страницы
+     * @return PageLemmasDto леммы с позициями
+     */
     @Override
-    public List<String> getWords(String text) {
-        return Arrays.stream(text.toLowerCase()
-                        .replaceAll("([^а-я\s])", " ")
-                        .strip()
-                        .split("\\s+"))
-                .filter(word -> word.length() > 2)
-                .toList();
+    public PageLemmasDto getLemmasWithPositions(String text) {
+        WordTokenizer tokenizer = WordTokenizer.forCurrentThread();
+        int count = tokenizer.tokenize(text, MIN_WORD_LENGTH);
+        int[] tokenOffsets = new int[count];
+        Map<String, PositionList> lemmas = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            tokenOffsets[i] = tokenizer.start(i);
+            MorphologyEngine.WordForm wordForm = morphologyEngine.lookup(tokenizer.word(i));
+            if (wordForm.isIndexable()) {
+                lemmas.computeIfAbsent(wordForm.lemma(), k -> new PositionList()).add(i);
+            }
+        }
+        Map<String, int[]> positions = new HashMap<>(lemmas.size() * 2);
+        lemmas.forEach((lemma, list) -> positions.put(lemma, list.toArray()));
+        return new PageLemmasDto(positions, tokenOffsets);
     }
 
-    @Override
-    public boolean isNotWord(List<String> words) {
-        return words.stream().anyMatch(this::hasParticleProperty);
-    }
+    /**
+     * Растущий список позиций слов одной леммы
+     */
+    private static class PositionList {
+        private int[] values = new int[4];
+        private int size = 0;
 
-    private boolean hasParticleProperty(String wordBase) {
-        for (String property : particlesNames) {
-            if (wordBase.toUpperCase().contains(property)) {
-                return true;
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
             }
+            values[size++] = value;
         }
-        return false;
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    @Override
+    public List<String> getWords(String text) {
+        WordTokenizer tokenizer = WordTokenizer.forCurrentThread();
+        tokenizer.tokenize(text, MIN_WORD_LENGTH);
+        return tokenizer.words();
+    }
+
+    @Override
+    public boolean isNotWord(List<String> words) {
+        return morphologyEngine.hasParticleProperty(words);
     }
 
     /**
@@ -280,27 +328,17 @@ public class MorphologyServiceImpl implements MorphologyService {
         return lemmaRepository.findOne(Example.of(strToLemma(word, site))).orElse(null);
     }
 
-    /**
-     * Очищает HTML от тегов
-     * @param html
-     * @return
-     */
-    private String stripHtml(String html) {
-        return Jsoup.clean(html, Safelist.none());
-    }
-
     @Override
     public String getNormalFormsWord(String word) {
-        List<String> res = luceneMorphology.getNormalForms(word
-                .replaceAll("[^А-я]", " ")
+        return morphologyEngine.lookup(word
+                .replaceAll("[^А-яA-Za-z]", " ")
                 .toLowerCase()
-                .strip());
-        return res.get(0);
+                .strip()).lemma();
     }
 
     @Override
     public boolean checkString(String text) {
-        return luceneMorphology.checkString(text);
+        return morphologyEngine.checkString(text);
     }
 
 }
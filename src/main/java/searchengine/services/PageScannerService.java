@@ -1,5 +1,6 @@
 package searchengine.services;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import searchengine.exception.IndexingSiteException;
 import searchengine.response.HtmlParseResponse;
@@ -7,96 +8,138 @@ import searchengine.dto.index.PageDto;
 import searchengine.response.PageScannerResponse;
 import searchengine.model.Page;
 import searchengine.model.Site;
-import searchengine.repository.LinkStorage;
 import searchengine.util.LinkToolsBox;
+import searchengine.util.PageToolsBox;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.RecursiveTask;
 
+/**
+ * Задача обхода одной страницы сайта. Сохраняет страницу и ставит в сессию
+ * обхода задачи для всех найденных на ней внутренних ссылок.
+ */
 @Slf4j
-public class PageScannerService extends RecursiveTask<PageScannerResponse> {
+public class PageScannerService implements Runnable {
 
     // адрес сканируемой страницы
     private final String url;
     private final String rootUrl;
     private final Site site;
     private final IndexService indexService;
+    private final CrawlSession session;
+    private final SiteService siteService;
+    // повторная индексация: не изменившиеся страницы не перезаписываются
+    private final boolean incremental;
+    // дата изменения страницы из sitemap.xml
+    private final String lastmod;
+    @Getter
+    private volatile PageScannerResponse response;
 
     // конструкторы
-    public PageScannerService(PageDto pageDto, IndexService service)  {
+    public PageScannerService(PageDto pageDto, IndexService service, CrawlSession session)  {
+        this(pageDto, service, session, false);
+    }
+
+    public PageScannerService(PageDto pageDto, IndexService service, CrawlSession session, boolean incremental)  {
         this.rootUrl = LinkToolsBox.normalizeRootUrl(pageDto.getRootUrl());
         this.url = pageDto.getUrl();
         this.site  = pageDto.getSite();
         this.indexService = service;
+        this.session = session;
+        this.siteService = service.getSiteService();
+        this.incremental = incremental;
+        this.lastmod = pageDto.getLastmod();
     }
 
     // end конструкторы
     @Override
-    protected PageScannerResponse compute() {
+    public void run() {
+        response = scan();
+    }
+
+    private PageScannerResponse scan() {
         if (RunIndexMonitor.isStopIndexing()) {
             return PageScannerResponse.getStopResponse();
         }
-        if (LinkStorage.containsLink(url)) {
-            return new PageScannerResponse(
-                    PageScannerResponse.status.DOUBLE_LINK,
-                    "Ссылка уже добавлена");
-        }
-
-        LinkStorage.addLink(url);
-
-        // Выдерживаем паузу в 200 - 300мс перед началом загрузки страницы
-        // рандомность для снижения шанса блокировки
-        pause(200, 500);
-
-        // Список ветвей рекурсии для каждой ссылки
-        List<PageScannerService> tasks = new ArrayList<>();
-
-        HtmlParseService htmlParseService  = new HtmlParseService(url, rootUrl);
+        String path = LinkToolsBox.getShortUrl(url, rootUrl);
+        Page existingPage = siteService.findPage(site, path);
+        // при повторной индексации страница запрашивается условным запросом
+        HtmlParseService htmlParseService  = new HtmlParseService(url, rootUrl,
+                incremental ? existingPage : null);
+        // по sitemap.xml страница не изменялась - запрос к сайту не нужен
+        HtmlParseResponse htmlParseResponse = incremental && existingPage != null
+                && PageToolsBox.isNotModifiedSince(lastmod, existingPage.getLastModified())
+                ? htmlParseService.parseCached() : htmlParseService.parse();
         // Получаем множество всех ссылок на странице без дублей
         Set<String> linksOnPageList = htmlParseService.getAllLinksOnPage();
-
-
-        // Получаем doc и статус
-        HtmlParseResponse htmlParseResponse = htmlParseService.parse();
+        boolean notModified = htmlParseResponse.getStatus() == HtmlParseService.NOT_MODIFIED;
         // Если не удалось получить главную страницу сайта. Возвращаем ошибку
-        if (url.equals(rootUrl) && htmlParseResponse.getStatus() != 200)  {
+        if (url.equals(rootUrl) && htmlParseResponse.getStatus() != 200 && !notModified)  {
             return PageScannerResponse.getErrorResponse();
         }
 
-        if (!indexService.isVisitedLinks(LinkToolsBox.getShortUrl(url, rootUrl))) {
-            savePageToRepository(url, htmlParseResponse);
+        if (!notModified) {
+            savePageToRepository(path, htmlParseResponse, existingPage);
         }
 
-        // Создаем ветку рекурсии для каждой ссылки на странице
-        for (String link : linksOnPageList) {
-            PageDto pageDto = new PageDto(link, rootUrl, site);
-            PageScannerService task = new PageScannerService(pageDto, indexService);
-            task.fork();
+        // Страницу не удалось загрузить, ссылка будет отмечена в очереди как FAILED
+        if (htmlParseResponse.getStatus() == 0) {
+            return PageScannerResponse.getErrorResponse();
         }
+
+        // Добавляем ссылки страницы в очередь обхода сайта. Сессия передает задачи
+        // в пул через планировщик, который выдерживает паузу между запросами к сайту
+        session.enqueue(linksOnPageList);
         return RunIndexMonitor.isStopIndexing() ? PageScannerResponse.getStopResponse()
                 : PageScannerResponse.getOKResponse();
     }
 
-    private void savePageToRepository(String url, HtmlParseResponse htmlParseResponse)  {
-        Page page = new Page();
-        page.setPath(LinkToolsBox.getShortUrl(url, rootUrl));
+    /**
+     * Сохраняет страницу и передает ее на лемматизацию. Уже сохраненная страница
+     * перезаписывается только при повторной индексации и только если изменился ее
+     * контент, при этом записи индекса страницы удаляются, чтобы она была
+     * лемматизирована заново. Если контент не изменился, сохраняются только новые
+     * ETag и Last-Modified, чтобы следующий условный запрос шел с актуальными значениями.
+     */
+    private void savePageToRepository(String path, HtmlParseResponse htmlParseResponse, Page existingPage)  {
+        String content = htmlParseResponse.getDocument().toString();
+        String contentHash = htmlParseResponse.getContentHash();
+        Page page = existingPage;
+        if (page != null) {
+            if (!incremental) {
+                return;
+            }
+            if (contentHash != null && contentHash.equals(page.getContentHash())) {
+                updateValidators(page, htmlParseResponse);
+                return;
+            }
+            siteService.deleteLemmaByPage(page);
+        } else {
+            page = new Page();
+            page.setPath(path);
+            page.setSite(site);
+        }
         page.setCode(htmlParseResponse.getStatus());
-        page.setSite(site);
-        page.setContent(htmlParseResponse.getDocument().toString());
-        indexService.getSiteService().savePage(page);
+        page.setContent(content);
+        page.setTitle(htmlParseResponse.getTitle());
+        page.setText(htmlParseResponse.getText());
+        page.setEtag(htmlParseResponse.getEtag());
+        page.setLastModified(htmlParseResponse.getLastModified());
+        page.setContentHash(contentHash);
+        // позиции слов записываются при лемматизации, до нее страница считается не лемматизированной
+        page.setTokenOffsets(null);
+        // страница лемматизируется конвейером сессии, не дожидаясь окончания обхода
+        session.pageSaved(siteService.savePage(page));
     }
 
-    private void pause(int min, int max)  {
-        int duration = min + (int)(Math.random() * (max - min));
-        try {
-            //log.info(Thread.currentThread().getName() + " sleeping for " + duration + " ms");
-            Thread.sleep(duration);
-        } catch (InterruptedException e) {
-            log.info("InterruptedException while sleep", e);
-            throw new RuntimeException(e);
+    private void updateValidators(Page page, HtmlParseResponse htmlParseResponse) {
+        if (Objects.equals(page.getEtag(), htmlParseResponse.getEtag())
+                && Objects.equals(page.getLastModified(), htmlParseResponse.getLastModified())) {
+            return;
         }
+        page.setEtag(htmlParseResponse.getEtag());
+        page.setLastModified(htmlParseResponse.getLastModified());
+        siteService.savePage(page);
     }
 
 }
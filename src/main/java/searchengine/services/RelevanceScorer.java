@@ -0,0 +1,16 @@
+package searchengine.services;
+
+import searchengine.repository.InvertedIndex;
+
+/**
+ * Оценка абсолютной релевантности найденных страниц по данным инвертированного
+ * индекса. Реализация выбирается параметром search-cfg.scoring по имени бина.
+ */
+public interface RelevanceScorer {
+
+    /**
+     * @param match найденные страницы со статистикой лемм запроса
+     * @return double[] оценка страницы match.pageIds()[i], чем больше, тем выше в выдаче
+     */
+    double[] score(InvertedIndex.Match match);
+}
@@ -15,8 +15,8 @@ import java.util.HashSet;
 @Slf4j
 public class RunIndexMonitor {
     private static HashSet<ThreadIndexingManager> indexers = new HashSet<>();
-    private static boolean stopIndexing = false;
-    private static boolean isIndexingRunning = false;
+    private static volatile boolean stopIndexing = false;
+    private static volatile boolean isIndexingRunning = false;
     public static synchronized void regIndexer(ThreadIndexingManager indexer){
         indexers.add(indexer);
         switchIndexMonitor();
@@ -39,18 +39,17 @@ public class RunIndexMonitor {
         log.info("isIndexingRunning is {}", isIndexingRunning);
     }
 
-    public static void setStopIndexing(boolean stop) {
+    public static synchronized void setStopIndexing(boolean stop) {
         stopIndexing = stop;
+        if (stop) {
+            indexers.forEach(ThreadIndexingManager::stop);
+        }
     }
 
     public static boolean isStopIndexing()  {
         return stopIndexing;
     }
 
-    public static void setIndexingRunning(boolean running)  {
-        isIndexingRunning = running;
-    }
-
     public static boolean isIndexingRunning()  {
         return isIndexingRunning;
     }
@@ -0,0 +1,152 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchCfg;
+import searchengine.dto.search.SearchResultData;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Кэш результатов поиска, общий для всех пользователей. Ключ - отсортированный
+ * набор лемм запроса и сайт, поэтому запросы, отличающиеся формой или порядком
+ * слов, используют один результат. Запись хранится cache-ttl секунд, при
+ * превышении cache-size удаляются самые старые записи. При изменении индекса
+ * сайта удаляются его записи и записи поиска по всем сайтам.
+ * Запись хранит поколение данных, по которым выполнялся поиск: счетчики поколений
+ * увеличиваются при каждом сбросе, и запись, найденная до сброса, не выдается и не
+ * сохраняется, даже если поиск выполнялся одновременно со сбросом.
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttl;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // поколение данных сайта
+    private final Map<Integer, AtomicLong> siteGenerations = new ConcurrentHashMap<>();
+    // увеличивается при сбросе всего кэша
+    private final AtomicLong allGeneration = new AtomicLong();
+    // увеличивается при любом сбросе, поколение поиска по всем сайтам
+    private final AtomicLong anySiteGeneration = new AtomicLong();
+
+    /**
+     * @param lemmas отсортированные леммы запроса
+     * @param siteId id сайта, null - поиск по всем сайтам
+     */
+    private record Key(List<String> lemmas, Integer siteId) {
+    }
+
+    private record Entry(SearchResultData result, long createdAt, long generation) {
+    }
+
+    public SearchResultCache(SearchCfg cfg) {
+        this.maxSize = Math.max(1, cfg.getCacheSize());
+        this.ttl = cfg.getCacheTtl() * 1000L;
+    }
+
+    /**
+     * Возвращает результат поиска из кэша или выполняет поиск и сохраняет результат
+     * @param lemmas леммы запроса
+     * @param siteId id сайта, null - поиск по всем сайтам
+     * @param search выполняет поиск, если результата нет в кэше
+     * @return SearchResultData результат поиска
+     */
+    public SearchResultData get(Collection<String> lemmas, Integer siteId, Supplier<SearchResultData> search) {
+        Key key = new Key(List.copyOf(new TreeSet<>(lemmas)), siteId);
+        long now = System.currentTimeMillis();
+        // поколение фиксируется до поиска
+        long generation = generation(siteId);
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.createdAt() < ttl && entry.generation() == generation) {
+            hits.increment();
+            return entry.result();
+        }
+        misses.increment();
+        SearchResultData result = search.get();
+        // индекс изменился во время поиска, результат может быть неактуален
+        if (generation(siteId) != generation) {
+            return result;
+        }
+        entries.put(key, new Entry(result, now, generation));
+        if (entries.size() > maxSize) {
+            evict(now);
+        }
+        return result;
+    }
+
+    /**
+     * Удаляет результаты поиска по сайту и по всем сайтам
+     * @param siteId id сайта
+     */
+    public void invalidateSite(int siteId) {
+        siteGenerations.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+        anySiteGeneration.incrementAndGet();
+        entries.keySet().removeIf(key -> key.siteId() == null || key.siteId() == siteId);
+    }
+
+    public void invalidateAll() {
+        allGeneration.incrementAndGet();
+        anySiteGeneration.incrementAndGet();
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return double доля запросов, полученных из кэша
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Поколение данных поиска: по всем сайтам меняется при любом сбросе, по сайту -
+     * при сбросе сайта или всего кэша (оба счетчика только растут, поэтому их сумма
+     * меняется при изменении любого из них)
+     */
+    private long generation(Integer siteId) {
+        if (siteId == null) {
+            return anySiteGeneration.get();
+        }
+        AtomicLong site = siteGenerations.get(siteId);
+        return allGeneration.get() + (site == null ? 0 : site.get());
+    }
+
+    /**
+     * Удаляет устаревшие записи, затем самые старые, пока в кэше не останется
+     * 90% от cache-size, чтобы не повторять отбор при каждом новом запросе
+     */
+    private synchronized void evict(long now) {
+        entries.values().removeIf(entry -> now - entry.createdAt() >= ttl);
+        int excess = entries.size() - maxSize * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+        entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().createdAt()))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(entries::remove);
+        log.debug("Кэш поиска: записей {}, попаданий {}%", entries.size(), Math.round(getHitRate() * 100));
+    }
+}
@@ -1,20 +1,29 @@
 package searchengine.services;
 
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
 import org.springframework.data.domain.Example;
 import org.springframework.stereotype.Service;
+import searchengine.config.SearchCfg;
 import searchengine.dto.index.SiteDto;
 import searchengine.dto.search.SearchItemData;
 import searchengine.dto.search.SearchPageData;
+import searchengine.dto.search.SearchResultData;
 import searchengine.model.IndexEntity;
 import searchengine.model.Lemma;
 import searchengine.model.Page;
 import searchengine.model.Site;
 import searchengine.repository.IndexEntityRepository;
+import searchengine.repository.IndexSearchRepository;
+import searchengine.repository.InvertedIndex;
 import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
 import searchengine.response.SearchResponse;
+import searchengine.util.HtmlToolsBox;
+import searchengine.util.PageToolsBox;
+import searchengine.util.RankToolsBox;
 import searchengine.util.SiteToolsBox;
+import searchengine.util.VarIntToolsBox;
+import searchengine.util.WordTokenizer;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -27,43 +36,77 @@ public class SearchServiceImpl implements SearchService {
     private final MorphologyService morphologyService;
     private final LemmaRepository lemmaRepository;
     private final IndexEntityRepository indexEntityRepository;
+    private final PageRepository pageRepository;
+    private final IndexSearchRepository indexSearchRepository;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
+    private final RelevanceScorer relevanceScorer;
 
     private final int OFFSET_SNIPPET_START = 5; // индекс смещения сниппера от ключ.слова влево
     private final int OFFSET_SNIPPET_END = 5; // индекс смещения сниппера от ключ.слова вправо
     private final int MAX_LENGTH_SNIPPET = 250; // максимальная длинна сниппера
 
-    private List<SearchPageData> lastSearchResult = new ArrayList<>();
-    private String lastQuery = "";
-
     public SearchServiceImpl(IndexService indexService,
                              SiteService siteService,
                              LemmaRepository lemmaRepository,
-                             IndexEntityRepository indexEntityRepository) throws Exception {
+                             IndexEntityRepository indexEntityRepository,
+                             PageRepository pageRepository,
+                             IndexSearchRepository indexSearchRepository,
+                             InvertedIndex invertedIndex,
+                             SearchResultCache searchResultCache,
+                             SearchCfg searchCfg,
+                             Map<String, RelevanceScorer> scorers) throws Exception {
         this.indexService = indexService;
         this.morphologyService = new MorphologyServiceImpl();
         this.lemmaRepository = lemmaRepository;
         this.indexEntityRepository = indexEntityRepository;
+        this.pageRepository = pageRepository;
+        this.indexSearchRepository = indexSearchRepository;
+        this.invertedIndex = invertedIndex;
+        this.searchResultCache = searchResultCache;
+        this.relevanceScorer = scorers.get(searchCfg.getScoring());
+        if (relevanceScorer == null) {
+            throw new IllegalArgumentException("Unknown search-cfg.scoring: " + searchCfg.getScoring()
+                    + ", expected one of " + scorers.keySet());
+        }
         this.siteService = siteService;
 
     }
 
     @Override
     public SearchResponse search(String query, int offset, int limit, String siteUrl) {
-        // Сравниваем запрос с предыдущим, если они равны то получаем ответ из буффера
-        if (lastQuery.equals(query) && offset != 0) {
-            return createResponse(lastSearchResult, offset, limit);
-        }
-        lastQuery = query.substring(0);
-        lastSearchResult = new ArrayList<>();
-
         Site site = siteService.findSite(null, null, siteUrl);
 
         // получаем map лемм из строки поиска
         HashMap<String, Integer> lemmasSearchQueryMap = morphologyService.getLemmasStrFromText(query);
 
+        // найденные страницы берутся из кэша, если запрос с теми же леммами уже выполнялся.
+        // Пока индекс загружается, поиск выполняется по БД и результат не кэшируется,
+        // чтобы после загрузки индекса выдача строилась по нему
+        SearchResultData result = invertedIndex.isReady()
+                ? searchResultCache.get(lemmasSearchQueryMap.keySet(), site == null ? null : site.getId(),
+                        () -> findPages(lemmasSearchQueryMap, site))
+                : findPages(lemmasSearchQueryMap, site);
+        return createResponse(result, offset, limit);
+    }
+
+    /**
+     * Подбирает страницы, содержащие все леммы запроса, и рассчитывает их
+     * абсолютную релевантность. Заголовки и сниппеты не строятся.
+     * @param lemmasSearchQueryMap леммы строки поиска
+     * @param site сайт, null - поиск по всем сайтам
+     * @return SearchResultData найденные страницы с оценками
+     */
+    private SearchResultData findPages(HashMap<String, Integer> lemmasSearchQueryMap, Site site) {
+        if (invertedIndex.isReady()) {
+            // страницы подбираются и оцениваются по индексу в памяти
+            InvertedIndex.Match match = invertedIndex.match(lemmasSearchQueryMap.keySet(),
+                    site == null ? null : site.getId(), 80.0);
+            return new SearchResultData(match.lemmas(), site, match.pageIds(), relevanceScorer.score(match));
+        }
         // удаляем те леммы, которые встречаются слишком часто и
         // заменяем value на колво страниц на которых лемма встретилась
-        lemmasSearchQueryMap = removeFerquenterLemmas(lemmasSearchQueryMap, 80.0, siteUrl);
+        lemmasSearchQueryMap = removeFerquenterLemmas(new HashMap<>(lemmasSearchQueryMap), 80.0, site);
 
         // сортируем леммы по частоте от мин до макс
         Map<String, Integer> sortMap = sortLemmasMap(lemmasSearchQueryMap);
@@ -71,29 +114,36 @@ public class SearchServiceImpl implements SearchService {
 
         // отбираем страницы содержащие все леммы из запроса
         List<Page> pages = findPageMatchingQuery(lemmasSortList, site);
-
-        List<SearchPageData> searchingPages = convertPageToSearchPageData(pages, lemmasSortList, site);
-        lastSearchResult = searchingPages.stream()
-                .sorted(Comparator.comparingDouble(SearchPageData::getRelRelevance).reversed())
-                .toList();
-
-        return createResponse(lastSearchResult, offset, limit);
+        int[] pageIds = new int[pages.size()];
+        double[] scores = new double[pages.size()];
+        Map<Integer, Integer> pageIndexes = new HashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            pageIds[i] = pages.get(i).getId();
+            pageIndexes.put(pageIds[i], i);
+        }
+        // пока индекс не загружен, релевантность - сумма упоминаний лемм по строкам индекса,
+        // загруженным одним запросом
+        IndexSearchRepository.Rows rows = indexSearchRepository.findRows(pageIndexes.keySet(), lemmasSortList);
+        for (int i = 0; i < rows.size(); i++) {
+            scores[pageIndexes.get(rows.pageIds()[i])] += rows.ranks()[i];
+        }
+        return new SearchResultData(lemmasSortList, site, pageIds, scores);
     }
 
     /**
-     * Возвращает сформированный объект SearchResponse. С учетом параметров offset и limit
-     * @param searchingPages Спсок объектов SearchPageData
+     * Возвращает сформированный объект SearchResponse. С учетом параметров offset и limit.
+     * Из найденных страниц отбираются offset + limit лучших, заголовки и сниппеты
+     * строятся только для возвращаемых страниц.
+     * @param result найденные страницы с оценками
      * @param offset отступ от начала списка
      * @param limit максимальное количество элементов, которые нужно вернуть
      * @return объект SearchResponse
      */
-    private SearchResponse createResponse(List<SearchPageData> searchingPages, int offset, int limit) {
+    private SearchResponse createResponse(SearchResultData result, int offset, int limit) {
+        int[] top = RankToolsBox.topK(result.getScores(), offset + limit);
+        int[] window = offset < top.length ? Arrays.copyOfRange(top, offset, top.length) : new int[0];
         List<SearchItemData> items = new ArrayList<>();
-        for (int i = offset; i < searchingPages.size(); i++) {
-            SearchPageData page = searchingPages.get(i);
-            if (items.size() >= limit) {
-                break;
-            }
+        for (SearchPageData page : convertPageToSearchPageData(result, window)) {
             SearchItemData item = new SearchItemData();
             item.setSite(page.getPage().getSite().getUrl());
             item.setSiteName(page.getPage().getSite().getName());
@@ -105,32 +155,50 @@ public class SearchServiceImpl implements SearchService {
         }
         SearchResponse response = new SearchResponse();
         response.setResult(true);
-        response.setCount(searchingPages.size());
+        response.setCount(result.getPageIds().length);
         response.setData(items);
         return response;
     }
 
     /**
-     * Создает сниппет для указанной в объекте SearchPageData страницы.
+     * Создает сниппет для указанной в объекте SearchPageData страницы. Сниппет строится
+     * по сохраненным в индексе позициям слов без повторной лемматизации текста.
+     * Для страниц, проиндексированных без позиций, текст лемматизируется заново.
      * @param pageData экземпляр SearchPageData должен содержать страницу
      *                 для которой будет создаваться сниппет
+     * @param lemmasStrList леммы запроса
      * @return
      */
-    private String createSnippetForPage(SearchPageData pageData) {
+    private String createSnippetForPage(SearchPageData pageData, List<String> lemmasStrList) {
         if (pageData == null || pageData.getPage() == null) {
             return "";
         }
-        String html = pageData.getPage().getContent();
-        String text = Jsoup.parse(html).body().text();
-        String [] textArray = text.split(" ");
-        List<String> lemmasStrList = pageData.getLemmas().keySet().stream()
-                .map(Lemma::getLemma)
-                .toList();
+        String text = PageToolsBox.getText(pageData.getPage());
+        // сниппет строится по тексту тела, без заголовка страницы в начале текста
+        int bodyOffset = Math.min(text.length(), HtmlToolsBox.bodyOffset(PageToolsBox.getTitle(pageData.getPage())));
+        if (pageData.getPage().getTokenOffsets() != null && pageData.getPositions().length > 0) {
+            int[] offsets = VarIntToolsBox.decodeDeltas(pageData.getPage().getTokenOffsets());
+            int firstWord = 0;
+            while (firstWord < offsets.length && offsets[firstWord] < bodyOffset) {
+                firstWord++;
+            }
+            int[] hits = pageData.getPositions();
+            int first = 0;
+            while (first < hits.length && hits[first] < firstWord) {
+                first++;
+            }
+            if (first == hits.length) {
+                // слова запроса есть только в заголовке страницы
+                return getSnippetFromPositions(text, offsets, hits, 0);
+            }
+            return getSnippetFromPositions(text, offsets, Arrays.copyOfRange(hits, first, hits.length), firstWord);
+        }
+        String [] textArray = text.substring(bodyOffset).split(" ");
 
         // Создаем список позиций ключевых слов в тексте
         List<Integer> searchWordsPositions = new ArrayList<>();
         for (int i = 0; i < textArray.length; i++) {
-            String currentWord = textArray[i].replaceAll("[^А-я]", " ").toLowerCase().strip();
+            String currentWord = textArray[i].replaceAll("[^А-яA-Za-z]", " ").toLowerCase().strip();
             if (currentWord.isBlank() || currentWord.length() < 3 || !morphologyService.checkString(currentWord)) {
                 continue;
             }
@@ -177,52 +245,106 @@ public class SearchServiceImpl implements SearchService {
         return sb.toString();
     }
 
+    /**
+     * Извлекает текст сниппета по позициям ключевых слов. Вокруг каждого ключевого слова
+     * берется OFFSET_SNIPPET_START слов слева и OFFSET_SNIPPET_END справа, пересекающиеся
+     * фрагменты объединяются, ключевые слова выделяются тегом b. Фрагменты добавляются,
+     * пока длина сниппета не превысит MAX_LENGTH_SNIPPET.
+     * @param text текст страницы
+     * @param offsets позиции слов в тексте
+     * @param hits порядковые номера ключевых слов (по возрастанию)
+     * @param firstWord первое слово, которое может попасть в сниппет
+     * @return String сниппет
+     */
+    private String getSnippetFromPositions(String text, int[] offsets, int[] hits, int firstWord) {
+        StringBuilder sb = new StringBuilder();
+        int last = firstWord - 1; // последнее добавленное в сниппет слово
+        int i = 0;
+        while (i < hits.length && hits[i] < offsets.length && sb.length() < MAX_LENGTH_SNIPPET) {
+            int first = i;
+            int from = Math.max(last + 1, hits[i] - OFFSET_SNIPPET_START);
+            int to = Math.min(offsets.length - 1, hits[i] + OFFSET_SNIPPET_END);
+            while (i + 1 < hits.length && hits[i + 1] <= to) {
+                i++;
+                to = Math.min(offsets.length - 1, hits[i] + OFFSET_SNIPPET_END);
+            }
+            if (offsets[to] >= text.length()) {
+                // текст страницы изменился после индексации
+                break;
+            }
+            if (sb.length() > 0) {
+                sb.append(from > last + 1 ? " ... " : " ");
+            }
+            int cursor = offsets[from];
+            for (int j = first; j <= i; j++) {
+                int start = offsets[hits[j]];
+                int end = WordTokenizer.wordEnd(text, start);
+                sb.append(text, cursor, start).append("<b>").append(text, start, end).append("</b>");
+                cursor = end;
+            }
+            sb.append(text, cursor, Math.max(cursor, WordTokenizer.wordEnd(text, offsets[to])));
+            last = to;
+            i++;
+        }
+        return sb.toString();
+    }
+
     private String getPageTitle(Page page) {
         if (page == null) {
             return "";
         }
-        String html = page.getContent();
-        return Jsoup.parse(html).title();
+        return PageToolsBox.getTitle(page);
     }
 
     /**
-     * Конвертирует список объектов Page в объекты типа SearchPageData. Для каждого
-     * объекта типа SearchPageData, подставляются леммы соответствующие запросу найденные
-     * на этой странице, рассчитывается релевантность (abs & rel), Заголовок страницы,
-     * создается сниппет.
-     * @param pagesList список страниц, которые будут обработаны
-     * @param lemmasList список ключевые слова поиска
-     * @param site Site объект сайта для которого будет делаться выборка поиска
-     * @return список объектов типа SearchPageData, для каждого объекта типа Page
+     * Конвертирует найденные страницы из диапазона выдачи в объекты типа SearchPageData.
+     * Для каждого объекта подставляются позиции слов запроса на странице (строки индекса
+     * всех страниц загружаются одним запросом), относительная релевантность,
+     * заголовок страницы, создается сниппет.
+     * @param result найденные страницы с оценками
+     * @param window индексы страниц в result в порядке выдачи
+     * @return список объектов типа SearchPageData в порядке выдачи
      */
-    private List<SearchPageData> convertPageToSearchPageData(List<Page> pagesList, List<String> lemmasList, Site site) {
-        if (pagesList.size() < 1) {
+    private List<SearchPageData> convertPageToSearchPageData(SearchResultData result, int[] window) {
+        if (window.length < 1) {
             return new ArrayList<>();
         }
+        List<Integer> ids = Arrays.stream(window).map(i -> result.getPageIds()[i]).boxed().toList();
+        Map<Integer, Page> pages = pageRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Page::getId, page -> page));
+        double maxAbsRelevance = RankToolsBox.max(result.getScores());
+        IndexSearchRepository.Rows rows = indexSearchRepository.findRows(ids, result.getLemmas());
+        Map<Integer, List<byte[]>> positions = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            positions.computeIfAbsent(rows.pageIds()[i], id -> new ArrayList<>()).add(rows.positions()[i]);
+        }
         List<SearchPageData> searchingPagesList = new ArrayList<>();
-        List<Lemma> lemmas = findAllLemmasByName(lemmasList, site);
-        for (Page page : pagesList) {
-            SearchPageData searchingPage = new SearchPageData();
-            IndexEntity entity = new IndexEntity();
-            entity.setPage(page);
-            List<IndexEntity> entitiesIndex = indexEntityRepository.findAll(Example.of(entity));
-            entitiesIndex = entitiesIndex.stream().filter(e -> lemmas.contains(e.getLemma())).toList();
-            Map<Lemma, Double> lemmasMap = new HashMap<>();
-            for (IndexEntity e : entitiesIndex) {
-                lemmasMap.put(e.getLemma(), e.getRank());
+        for (int i : window) {
+            Page page = pages.get(result.getPageIds()[i]);
+            if (page == null) {
+                // страница удалена после поиска
+                continue;
             }
+            SearchPageData searchingPage = new SearchPageData();
+            searchingPage.setPositions(positions.getOrDefault(page.getId(), List.of()).stream()
+                    .flatMapToInt(bytes -> Arrays.stream(VarIntToolsBox.decodeDeltas(bytes)))
+                    .sorted()
+                    .distinct()
+                    .toArray());
 
             searchingPage.setPage(page);
-            searchingPage.setLemmas(lemmasMap);
+            searchingPage.setAbsRelevance(result.getScores()[i]);
+            searchingPage.setRelRelevance(result.getScores()[i] / maxAbsRelevance);
             searchingPage.setTitle(getPageTitle(page));
-            searchingPage.setSnippet(createSnippetForPage(searchingPage));
+            searchingPage.setSnippet(createSnippetForPage(searchingPage, result.getLemmas()));
             searchingPagesList.add(searchingPage);
         }
-        return resolveRelRelevance(searchingPagesList);
+        return searchingPagesList;
     }
 
     /**
-     * Находит в БД страницы соответствующие всем ключевым словам поиска
+     * Находит в БД страницы соответствующие всем ключевым словам поиска.
+     * Используется, пока не загружен инвертированный индекс.
      * @param lemmasStrings список ключевых слов поиска
      * @param site Site объект сайта для которого будет делаться выборка
      *             null по всей БД
@@ -233,27 +355,17 @@ public class SearchServiceImpl implements SearchService {
             return new ArrayList<>();
         }
         List<Page> pages = getListPagesFoundLemmas(lemmasStrings.get(0), site);
-        for (int i = 1; i < lemmasStrings.size(); i++) {
-            List<Page> pagesNext = getListPagesFoundLemmas(lemmasStrings.get(i), site);
+        for (int i = 1; i < lemmasStrings.size() && !pages.isEmpty(); i++) {
+            Set<Integer> pagesNext = getListPagesFoundLemmas(lemmasStrings.get(i), site).stream()
+                    .map(Page::getId)
+                    .collect(Collectors.toSet());
             pages = pages.stream()
-                    .filter(page -> pagesNext.contains(page))
+                    .filter(page -> pagesNext.contains(page.getId()))
                     .toList();
         }
         return pages;
     }
 
-    /**
-     * Рассчитывает относительную релевантность для объектов SearchPageData из переданного списка. У экземпляров должны быть установленны поля с леммами ключевых слов поиска и поле с absRelevance
-     * @param data Список SearchPageData объектов, которые необходимо обработать
-     * @return List<SearchPageData> тот же список, но с установленным полем относительной
-     * релевантности
-     */
-    private List<SearchPageData> resolveRelRelevance(List<SearchPageData> data) {
-        double maxAbsRelevance = data.stream().map(page -> page.getAbsRelevance()).max(Double::compare).get();
-        data.forEach(p -> p.setRelRelevance(p.getAbsRelevance() / maxAbsRelevance));
-        return data;
-    }
-
     /**
      * Выбирает из БД страницы соответствующие ключевому слову
      * @param lemmaStr ключевое слово поиска
@@ -274,22 +386,6 @@ public class SearchServiceImpl implements SearchService {
                 .collect(Collectors.toList());
     }
 
-    /**
-     * Возвращает список всех найденных объектов Lemma соответствующих ключевым словам
-     * переданным в списке lemmaStr
-     * @param lemmaStr List<String> список строковых представлений для поиска
-     * @param site Site объект сайта для которого будет делаться выборка
-     *             null поиск по всей БД
-     * @return List<Lemma> найденные объекты леммы
-     */
-    private List<Lemma> findAllLemmasByName(List<String> lemmaStr, Site site) {
-        List<Lemma> lemmasList = new ArrayList<>();
-        for (String lemma : lemmaStr) {
-            lemmasList.addAll(findLemmaByName(lemma, site));
-        }
-        return lemmasList;
-    }
-
     /**
      * Возвращает список объектов Lemma соответствующих ключевому слову
      *
@@ -320,19 +416,18 @@ public class SearchServiceImpl implements SearchService {
 
     /**
      * Удаляет из переданного Map леммы, которые встречаются более чем на limitPercent страницах
-     * всех проиндексированных сайтов (siteUrl=null) или конкретного сайта
+     * всех проиндексированных сайтов (site=null) или конкретного сайта
      *
      * @param lemmasMap
      * @param limitPercent max percent
      * @return
      */
     private HashMap<String, Integer> removeFerquenterLemmas(
-            HashMap<String, Integer> lemmasMap, double limitPercent, String siteUrl) {
+            HashMap<String, Integer> lemmasMap, double limitPercent, Site site) {
 
-        Site site = siteService.findSite(null, null, siteUrl);
         SiteDto siteDto = SiteToolsBox.siteModelToSiteDto(site);
         int allPageCount = siteService.countPagesOnSite(siteDto);
-        for (String lemma : lemmasMap.keySet()) {
+        for (String lemma : new ArrayList<>(lemmasMap.keySet())) {
             int countLemmas = countPageFoundLemmas(lemma, site);
             if (((double) countLemmas / allPageCount * 100) > limitPercent) {
                 lemmasMap.remove(lemma);
@@ -0,0 +1,170 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.springframework.stereotype.Service;
+import searchengine.config.JsopConnectionCfg;
+import searchengine.util.LinkToolsBox;
+import searchengine.util.RobotsRules;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Сервис начального заполнения очереди обхода сайта. Загружает и кэширует
+ * robots.txt каждого сайта, читает sitemap.xml (включая индексы sitemap и файлы .gz)
+ * и возвращает найденные в них адреса страниц вместе с датой изменения lastmod.
+ */
+@Slf4j
+@Service
+public class SiteSeedService {
+    // максимальный размер файла sitemap по протоколу sitemaps.org (без сжатия)
+    private static final int MAX_SITEMAP_BYTES = 50 * 1024 * 1024;
+    private static final int MAX_ROBOTS_BYTES = 512 * 1024;
+    // максимальное количество загружаемых файлов sitemap одного сайта
+    private static final int MAX_SITEMAP_FILES = 100;
+
+    private final JsopConnectionCfg cfg;
+    private final HttpClient httpClient;
+    private final ConcurrentHashMap<String, RobotsRules> robotsCache = new ConcurrentHashMap<>();
+
+    public SiteSeedService(JsopConnectionCfg cfg, HttpClient crawlHttpClient) {
+        this.cfg = cfg;
+        this.httpClient = crawlHttpClient;
+    }
+
+    /**
+     * Возвращает правила robots.txt сайта. Файл загружается один раз и хранится
+     * robots-cache-ttl минут. Если файл недоступен или соблюдение robots.txt
+     * отключено, обход сайта не ограничивается. Файл загружается вне блокировки
+     * кэша, поэтому медленный сайт не задерживает обращения к кэшу по другим сайтам;
+     * при одновременной загрузке в кэше остается более поздняя версия.
+     * @param rootUrl корневой адрес сайта    ex: http://site.com
+     * @return RobotsRules правила сайта
+     */
+    public RobotsRules getRobotsRules(String rootUrl) {
+        if (!cfg.isRobots()) {
+            return RobotsRules.allowAll();
+        }
+        long ttl = cfg.getRobotsCacheTtl() * 60_000L;
+        RobotsRules cached = robotsCache.get(rootUrl);
+        if (cached != null && System.currentTimeMillis() - cached.getLoadedAt() < ttl) {
+            return cached;
+        }
+        return robotsCache.merge(rootUrl, loadRobots(rootUrl),
+                (current, loaded) -> current.getLoadedAt() >= loaded.getLoadedAt() ? current : loaded);
+    }
+
+    /**
+     * Загружает адреса страниц из sitemap сайта. Адреса sitemap берутся из robots.txt,
+     * если их там нет - используется rootUrl/sitemap.xml. Внешние и запрещенные
+     * robots.txt адреса отбрасываются.
+     * @param rootUrl корневой адрес сайта    ex: http://site.com
+     * @param robots правила robots.txt сайта
+     * @return Map<String, String> адрес страницы -> lastmod (null, если не указан)
+     */
+    public Map<String, String> loadSitemapUrls(String rootUrl, RobotsRules robots) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        if (!cfg.isSitemap()) {
+            return urls;
+        }
+        Deque<String> sitemaps = new ArrayDeque<>(robots.getSitemaps());
+        if (sitemaps.isEmpty()) {
+            sitemaps.add(rootUrl + "/sitemap.xml");
+        }
+        Set<String> loaded = new HashSet<>();
+        int maxUrls = cfg.getMaxSitemapUrls();
+        while (!sitemaps.isEmpty() && loaded.size() < MAX_SITEMAP_FILES && urls.size() < maxUrls) {
+            String sitemapUrl = sitemaps.poll();
+            if (!loaded.add(sitemapUrl)) {
+                continue;
+            }
+            byte[] bytes = fetch(sitemapUrl, MAX_SITEMAP_BYTES);
+            if (bytes == null) {
+                continue;
+            }
+            try (InputStream in = isGzip(bytes) ? new GZIPInputStream(new ByteArrayInputStream(bytes))
+                    : new ByteArrayInputStream(bytes)) {
+                Document xml = Jsoup.parse(in, null, sitemapUrl, Parser.xmlParser());
+                // индекс sitemap ссылается на другие файлы sitemap
+                for (Element loc : xml.select("sitemapindex > sitemap > loc")) {
+                    sitemaps.add(loc.text().strip());
+                }
+                for (Element entry : xml.select("urlset > url")) {
+                    if (urls.size() >= maxUrls) {
+                        break;
+                    }
+                    String url = LinkToolsBox.normalizeUrl(entry.select("loc").text(), rootUrl);
+                    if (url != null && robots.isAllowed(url, rootUrl)) {
+                        String lastmod = entry.select("lastmod").text().strip();
+                        urls.putIfAbsent(url, lastmod.isEmpty() ? null : lastmod);
+                    }
+                }
+            } catch (IOException e) {
+                log.info("Не удалось разобрать sitemap {}: {}", sitemapUrl, e.getMessage());
+            }
+        }
+        log.info("Из sitemap сайта {} загружено адресов: {}", rootUrl, urls.size());
+        return urls;
+    }
+
+    private RobotsRules loadRobots(String rootUrl) {
+        byte[] bytes = fetch(rootUrl + "/robots.txt", MAX_ROBOTS_BYTES);
+        if (bytes == null) {
+            return RobotsRules.allowAll();
+        }
+        RobotsRules robots = RobotsRules.parse(new String(bytes, StandardCharsets.UTF_8));
+        log.info("robots.txt сайта {}: Crawl-delay {} мс, sitemap: {}",
+                rootUrl, robots.getCrawlDelay(), robots.getSitemaps());
+        return robots;
+    }
+
+    /**
+     * Загружает файл общим клиентом обхода
+     * @return byte[] тело ответа или null, если файл недоступен
+     */
+    private byte[] fetch(String url, int limit) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(LinkToolsBox.toUri(url))
+                    .timeout(Duration.ofMillis(cfg.getReadTimeout()))
+                    .header("User-Agent", cfg.getAgent())
+                    .GET()
+                    .build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    log.info("Файл {} недоступен, код ответа {}", url, response.statusCode());
+                    return null;
+                }
+                return body.readNBytes(limit);
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            log.info("Не удалось загрузить {}: {}", url, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static boolean isGzip(byte[] bytes) {
+        return bytes.length > 2 && (bytes[0] & 0xff) == 0x1f && (bytes[1] & 0xff) == 0x8b;
+    }
+}
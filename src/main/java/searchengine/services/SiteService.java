@@ -33,6 +33,19 @@ public interface SiteService {
     void deleteAllSite();
     void deleteSite(Site site);
 
+    /**
+     * Удаляет очередь обхода сайта (таблица frontier)
+     * @param site сайт
+     */
+    void deleteFrontierBySite(Site site);
+
+    /**
+     * Проверяет, остались ли у сайта не загруженные ссылки в очереди обхода
+     * @param site сайт
+     * @return boolean true - в очереди есть ссылки в состоянии QUEUED
+     */
+    boolean hasQueuedFrontier(Site site);
+
     /**
      * Получить список всех страниц сайта
      * @param siteDto siteDto объект задающий параметры поиска
@@ -40,6 +53,24 @@ public interface SiteService {
      *         если DTO == null, то вернет пустой список
      */
     public List<Page> findPagesBySite(SiteDto siteDto);
+
+    /**
+     * Найти страницу сайта по относительному адресу
+     * @param site сайт
+     * @param path адрес страницы от корня сайта
+     * @return Page сущность или null
+     */
+    Page findPage(Site site, String path);
+
+    /**
+     * Получить страницы сайта с успешным кодом ответа, которые еще не прошли
+     * лемматизацию (для них нет записей в таблице index_t), по возрастанию id
+     * @param site сайт
+     * @param afterId страницы выбираются с id больше указанного
+     * @param limit максимальное количество страниц
+     * @return List<Page> список страниц
+     */
+    List<Page> findUnindexedPagesBySite(Site site, int afterId, int limit);
     Page savePage(Page page);
     void deletePage(Page page);
     void deletePageByUrl(String url);
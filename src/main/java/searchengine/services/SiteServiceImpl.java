@@ -3,15 +3,20 @@ package searchengine.services;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Example;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.JsopConnectionCfg;
 import searchengine.dto.index.SiteDto;
 import searchengine.model.*;
+import searchengine.repository.FrontierRepository;
 import searchengine.repository.IndexEntityRepository;
+import searchengine.repository.InvertedIndex;
 import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 import searchengine.util.LinkToolsBox;
-import searchengine.util.SiteToolsBox;
+import searchengine.util.TransactionToolsBox;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -26,6 +31,10 @@ public class SiteServiceImpl implements SiteService {
     private final PageRepository pageRepository;
     private final IndexEntityRepository indexEntityRepository;
     private final LemmaRepository lemmaRepository;
+    private final FrontierRepository frontierRepository;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
+    private final JsopConnectionCfg jsopConnectionCfg;
     //private final PageService pageService;
 
 
@@ -59,11 +68,33 @@ public class SiteServiceImpl implements SiteService {
         return siteRepository.save(site);
     }
 
+    /**
+     * Удаляет сайт со всеми данными. Каждая таблица очищается одним запросом
+     * по site_id, частоты лемм не пересчитываются, т.к. леммы сайта удаляются.
+     */
     @Override
+    @Transactional
     public void deleteSite(Site site) {
-        List<Page> pages = findPagesBySite(SiteToolsBox.siteModelToSiteDto(site));
-        pages.forEach(this::deleteLemmaByPage);
-        siteRepository.delete(site);
+        int indexRows = indexEntityRepository.deleteBySite(site.getId());
+        int lemmas = lemmaRepository.deleteBySite(site);
+        int pages = pageRepository.deleteBySite(site);
+        frontierRepository.deleteBySite(site);
+        siteRepository.deleteById(site.getId());
+        TransactionToolsBox.afterCommit(() -> {
+            invertedIndex.removeSite(site.getId());
+            searchResultCache.invalidateSite(site.getId());
+        });
+        log.info("Сайт {} удален: страниц {}, лемм {}, строк индекса {}", site.getUrl(), pages, lemmas, indexRows);
+    }
+
+    @Override
+    public void deleteFrontierBySite(Site site) {
+        frontierRepository.deleteBySite(site);
+    }
+
+    @Override
+    public boolean hasQueuedFrontier(Site site) {
+        return frontierRepository.existsBySiteAndStatus(site, FrontierStatus.QUEUED);
     }
 
     private Site findSiteById(Integer id) {
@@ -104,17 +135,37 @@ public class SiteServiceImpl implements SiteService {
         }
     }
 
+    @Override
+    public Page findPage(Site site, String path) {
+        Page page = new Page();
+        page.setSite(site);
+        page.setPath(path);
+        return pageRepository.findOne(Example.of(page)).orElse(null);
+    }
+
+    @Override
+    public List<Page> findUnindexedPagesBySite(Site site, int afterId, int limit) {
+        return pageRepository.findUnindexedBySite(site, jsopConnectionCfg.getValidCodes(), afterId,
+                PageRequest.of(0, limit));
+    }
+
     @Override
     public synchronized Page savePage(Page page) {
         return pageRepository.save(page);
     }
 
+    /**
+     * Удаляет страницу вместе с ее индексом в одной транзакции
+     */
     @Override
+    @Transactional
     public void deletePage(Page page) {
         deleteLemmaByPage(page);
         pageRepository.delete(page);
     }
 
+    @Override
+    @Transactional
     public void deletePageByUrl(String url) {
         Page page = new Page();
         page.setPath(LinkToolsBox.getShortUrl(url, LinkToolsBox.extractRootDomain(url)));
@@ -122,22 +173,31 @@ public class SiteServiceImpl implements SiteService {
         Example<Page> example = Example.of(page);
         Optional<Page> pageOptional = pageRepository.findOne(example);
         if (pageOptional.isPresent()) {
-            deleteLemmaByPage(pageOptional.get());
             deletePage(pageOptional.get());
         }
     }
 
+    /**
+     * Удаляет индекс страницы: frequency лемм страницы уменьшается одним
+     * запросом UPDATE ... JOIN index_t, строки индекса удаляются одним DELETE,
+     * леммы, которые больше не встречаются на страницах сайта, удаляются.
+     * Страница удаляется из инвертированного индекса поиска после фиксации транзакции,
+     * чтобы при откате индекс в памяти не расходился с БД.
+     */
+    @Override
+    @Transactional
     public void deleteLemmaByPage(Page page) {
-        IndexEntity indexEntity = new IndexEntity();
-        indexEntity.setPage(page);
-        Example<IndexEntity> example = Example.of(indexEntity);
-        List<IndexEntity> indexEntities = indexEntityRepository.findAll(example);
-        for (IndexEntity indexEn : indexEntities) {
-            Lemma lemma = indexEn.getLemma();
-            lemma.decrementFrequency();
-            lemmaRepository.save(lemma);
+        int siteId = page.getSite().getId();
+        List<String> lemmas = indexEntityRepository.findLemmasByPage(page.getId());
+        indexEntityRepository.decrementLemmasByPage(page.getId());
+        indexEntityRepository.deleteByPage(page.getId());
+        if (!lemmas.isEmpty()) {
+            lemmaRepository.deleteUnusedBySiteAndLemmaIn(page.getSite(), lemmas);
         }
-        indexEntityRepository.deleteAll(indexEntities);
+        TransactionToolsBox.afterCommit(() -> {
+            invertedIndex.removePage(siteId, page.getId(), lemmas);
+            searchResultCache.invalidateSite(siteId);
+        });
     }
 
     @Override
@@ -171,18 +231,25 @@ public class SiteServiceImpl implements SiteService {
         return res;
     }
 
+    /**
+     * Очищает все таблицы в одной транзакции. Инвертированный индекс и кэш результатов
+     * поиска очищаются после фиксации транзакции; при ошибке изменения откатываются,
+     * а исключение передается вызывающему коду.
+     */
     @Override
+    @Transactional
     public void deleteAllSite() {
         log.info("Очистка БД!!!");
-        try {
-            indexEntityRepository.deleteAll();
-            lemmaRepository.deleteAll();
-            pageRepository.deleteAll();
-            siteRepository.deleteAll();
-        } catch (Exception e) {
-            log.error("Ошибка при очистке БД!!!");
-            e.printStackTrace();
-        }
+        // одна команда DELETE на таблицу, без загрузки сущностей
+        frontierRepository.deleteAllInBatch();
+        indexEntityRepository.deleteAllInBatch();
+        lemmaRepository.deleteAllInBatch();
+        pageRepository.deleteAllInBatch();
+        siteRepository.deleteAllInBatch();
+        TransactionToolsBox.afterCommit(() -> {
+            invertedIndex.clear();
+            searchResultCache.invalidateAll();
+        });
     }
 
     @Override
@@ -0,0 +1,22 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Component;
+import searchengine.repository.InvertedIndex;
+
+/**
+ * Оценка суммой упоминаний лемм запроса на странице
+ */
+@Component("termCount")
+public class TermCountScorer implements RelevanceScorer {
+
+    @Override
+    public double[] score(InvertedIndex.Match match) {
+        double[] scores = new double[match.size()];
+        for (int[] tf : match.counts()) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] += tf[i];
+            }
+        }
+        return scores;
+    }
+}
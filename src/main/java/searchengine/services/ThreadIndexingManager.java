@@ -2,17 +2,22 @@ package searchengine.services;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import searchengine.AppContextProvider;
+import searchengine.config.LemmatizationCfg;
 import searchengine.dto.index.PageDto;
+import searchengine.model.FrontierLink;
 import searchengine.response.PageScannerResponse;
 import searchengine.model.IndexingStatus;
-import searchengine.repository.LinkStorage;
+import searchengine.model.Page;
+import searchengine.util.LinkToolsBox;
 
-import java.io.IOException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * Класс, реализующий индексирование страниц каждого сайта
- * из отдельного потока.
+ * из отдельного потока. Страницы лемматизируются конвейером
+ * {@link LemmatizationPipeline} одновременно с обходом сайта.
  */
 @Slf4j
 public class ThreadIndexingManager implements Runnable {
@@ -20,44 +25,106 @@ public class ThreadIndexingManager implements Runnable {
     PageDto pageDto;
     private final IndexService indexService;
     private final SiteService siteService;
+    private final Mode mode;
+    private volatile CrawlSession session;
+
+    /**
+     * Режим индексации сайта
+     * FULL - сайт индексируется с нуля;
+     * RESUME - продолжение прерванного обхода по сохраненной очереди frontier;
+     * INCREMENTAL - повторный обход без удаления данных сайта, лемматизируются
+     * только новые и изменившиеся страницы.
+     */
+    public enum Mode {FULL, RESUME, INCREMENTAL}
+
     public ThreadIndexingManager(PageDto pageDto, IndexService indexService) {
+        this(pageDto, indexService, Mode.FULL);
+    }
+
+    public ThreadIndexingManager(PageDto pageDto, IndexService indexService, Mode mode) {
         this.pageDto = pageDto;
         this.indexService = indexService;
         this.siteService = indexService.getSiteService();
+        this.mode = mode;
     }
     @Override
     public void run() {
-        ForkJoinPool forkJoinPool = new ForkJoinPool();
-        PageScannerResponse response = forkJoinPool.invoke(new PageScannerService(pageDto, indexService));
-        RunIndexMonitor.regIndexer(this);
-
-        // Ожидаем когда отработают весь пул
-        while (forkJoinPool.getQueuedSubmissionCount() > 0 ||
-                forkJoinPool.getActiveThreadCount() > 0) {
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // индексатор зарегистрирован при запуске потока и снимается с регистрации при любом исходе
+        try {
+            CrawlExecutor crawlExecutor = (CrawlExecutor) AppContextProvider.getBean("crawlExecutor");
+            String rootUrl = LinkToolsBox.normalizeRootUrl(pageDto.getRootUrl());
+            session = crawlExecutor.newSession(pageDto.getSite(), rootUrl);
+            LemmatizationCfg lemmatizationCfg = (LemmatizationCfg) AppContextProvider.getBean("lemmatizationCfg");
+            LemmatizationPipeline pipeline = new LemmatizationPipeline(pageDto.getSite(), new MorphologyServiceImpl(),
+                    lemmatizationCfg);
+            session.setPageSink(pipeline::submit);
+            if (mode == Mode.RESUME) {
+                submitUnindexedPages(pipeline, lemmatizationCfg.getBatchSize());
+            }
+
+            // Ожидаем завершения всех задач обхода сайта
+            boolean incremental = mode == Mode.INCREMENTAL;
+            Function<FrontierLink, PageScannerService> taskFactory = link -> new PageScannerService(
+                    new PageDto(link.getUrl(), rootUrl, pageDto.getSite(), link.getLastmod()),
+                    indexService, session, incremental);
+            if (mode == Mode.RESUME) {
+                session.resume(taskFactory);
+            } else {
+                session.start(taskFactory);
             }
+            session.await();
+            // дожидаемся лемматизации страниц, оставшихся в очереди конвейера
+            pipeline.close();
+            // при продолжении обхода корневая страница уже загружена ранее
+            PageScannerResponse response = session.getRootResponse();
+            if (response == null) {
+                response = mode == Mode.RESUME ? PageScannerResponse.getOKResponse() : PageScannerResponse.getErrorResponse();
+            }
+
+            if (RunIndexMonitor.isStopIndexing()) {
+                siteService.updateStatusOnSite(pageDto.getSite(), IndexingStatus.FAILED);
+                siteService.updateLastErrorOnSite(pageDto.getSite(), "Индексация остановлена пользователем");
+            } else if (response.getStatus() == PageScannerResponse.status.ERROR) {
+                siteService.updateStatusOnSite(pageDto.getSite(), IndexingStatus.FAILED);
+                siteService.updateLastErrorOnSite(pageDto.getSite(), response.getMessage());
+            } else  {
+                siteService.updateStatusOnSite(pageDto.getSite(), IndexingStatus.INDEXED);
+                siteService.deleteFrontierBySite(pageDto.getSite());
+            }
+        } finally {
+            RunIndexMonitor.unregIndexer(this);
         }
+    }
 
-        if (RunIndexMonitor.isStopIndexing()) {
-            siteService.updateStatusOnSite(pageDto.getSite(), IndexingStatus.FAILED);
-            siteService.updateLastErrorOnSite(pageDto.getSite(), "Индексация остановлена пользователем");
-        } else if (response.getStatus() == PageScannerResponse.status.ERROR) {
-            siteService.updateStatusOnSite(pageDto.getSite(), IndexingStatus.FAILED);
-            siteService.updateLastErrorOnSite(pageDto.getSite(), response.getMessage());
-        } else  {
-            // Обрабатываем леммы
-            try {
-                MorphologyService morphologyService = new MorphologyServiceImpl();
-                morphologyService.processSite(pageDto.getSite());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    /**
+     * Передает в конвейер лемматизации страницы, сохраненные до остановки, но не
+     * попавшие в индекс. Вызывается до продолжения обхода: страницы этой сессии
+     * еще не сохранены и не будут лемматизированы дважды. Страницы читаются из БД
+     * частями, в памяти находится не больше одной части и очереди конвейера.
+     */
+    private void submitUnindexedPages(LemmatizationPipeline pipeline, int batchSize) {
+        int afterId = 0;
+        int submitted = 0;
+        List<Page> pages;
+        do {
+            pages = siteService.findUnindexedPagesBySite(pageDto.getSite(), afterId, batchSize);
+            pages.forEach(pipeline::submit);
+            submitted += pages.size();
+            if (!pages.isEmpty()) {
+                afterId = pages.get(pages.size() - 1).getId();
             }
-            siteService.updateStatusOnSite(pageDto.getSite(), IndexingStatus.INDEXED);
+        } while (pages.size() == batchSize && !RunIndexMonitor.isStopIndexing());
+        log.info("Сайт {}: передано на лемматизацию страниц, не попавших в индекс: {}",
+                pageDto.getSite().getUrl(), submitted);
+    }
+
+    /**
+     * Отменяет ожидающие задачи обхода сайта. Вызывается при остановке индексации.
+     */
+    public void stop() {
+        CrawlSession current = session;
+        if (current != null) {
+            current.cancel();
         }
-        RunIndexMonitor.unregIndexer(this);
-        LinkStorage.clear();
     }
 }
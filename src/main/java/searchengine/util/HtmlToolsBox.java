@@ -0,0 +1,125 @@
+package searchengine.util;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+import searchengine.response.HtmlParseResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Класс содержит служебные утилиты для извлечения данных из html документа.
+ */
+public class HtmlToolsBox {
+
+    private static final Set<String> HEADINGS = Set.of("h1", "h2", "h3", "h4", "h5", "h6");
+
+    /**
+     * За один обход документа извлекает заголовок страницы, заголовки h1-h6, видимый
+     * текст тела страницы и ссылки (атрибуты href тегов a) и сохраняет их в HtmlParseResponse.
+     * Текст для лемматизации начинается с заголовка страницы, за ним следует текст тела
+     * (см. {@link #bodyOffset(String)}). Заголовки h1-h6 входят в текст тела один раз.
+     * Текст соответствует Element.text(): пробелы схлопываются, блочные элементы
+     * и br разделяются пробелом.
+     * @param document разобранная страница
+     * @param response ответ, в который сохраняются данные
+     */
+    public static void extract(Document document, HtmlParseResponse response) {
+        Extractor extractor = new Extractor();
+        NodeTraversor.traverse(extractor, document);
+        String title = extractor.title == null ? "" : extractor.title;
+        response.setTitle(title);
+        response.setHeadings(extractor.headings);
+        response.setText((title + ' ' + extractor.text).strip());
+        response.setLinks(extractor.links);
+    }
+
+    /**
+     * Позиция начала текста тела в тексте страницы, который строит extract:
+     * слова до нее относятся к заголовку страницы
+     * @param title заголовок страницы
+     * @return int позиция первого символа текста тела
+     */
+    public static int bodyOffset(String title) {
+        return title == null || title.isEmpty() ? 0 : title.length() + 1;
+    }
+
+    /**
+     * @param html html страницы
+     * @return String текст страницы для лемматизации, как его строит extract
+     */
+    public static String extractText(String html) {
+        HtmlParseResponse response = new HtmlParseResponse();
+        extract(Jsoup.parse(html), response);
+        return response.getText();
+    }
+
+    private static class Extractor implements NodeVisitor {
+        private final StringBuilder text = new StringBuilder();
+        private final Set<String> links = new LinkedHashSet<>();
+        private final List<String> headings = new ArrayList<>();
+        private String title;
+        private int bodyDepth = 0;
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode textNode) {
+                if (bodyDepth > 0) {
+                    appendNormalised(textNode.getWholeText());
+                }
+            } else if (node instanceof Element element) {
+                String tag = element.normalName();
+                if (tag.equals("body")) {
+                    bodyDepth++;
+                } else if (tag.equals("title") && title == null) {
+                    title = element.text().strip().replaceAll("\\s+", " ");
+                } else if (tag.equals("a") && element.hasAttr("href")) {
+                    links.add(element.attr("href"));
+                } else if (bodyDepth > 0 && HEADINGS.contains(tag)) {
+                    String heading = element.text().strip();
+                    if (!heading.isEmpty()) {
+                        headings.add(heading);
+                    }
+                }
+                if (bodyDepth > 0 && (element.isBlock() || tag.equals("br"))) {
+                    appendSpace();
+                }
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+            if (node instanceof Element element) {
+                if (element.normalName().equals("body")) {
+                    bodyDepth--;
+                } else if (bodyDepth > 0 && element.isBlock()) {
+                    appendSpace();
+                }
+            }
+        }
+
+        private void appendNormalised(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (Character.isWhitespace(c) || c == '\u00A0') {
+                    appendSpace();
+                } else {
+                    text.append(c);
+                }
+            }
+        }
+
+        private void appendSpace() {
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+                text.append(' ');
+            }
+        }
+    }
+}
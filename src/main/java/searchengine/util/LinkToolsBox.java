@@ -2,8 +2,9 @@ package searchengine.util;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -159,15 +160,24 @@ public class LinkToolsBox {
       return true;
     }
 
-    public static int checkConnectLink(String url) {
-        int responseCode = 0;
+    /**
+     * Преобразует адрес в URI. Недопустимые в URI символы (пробелы, кириллица в пути)
+     * кодируются, уже закодированные последовательности %XX сохраняются.
+     * @param url String абсолютный адрес
+     * @return URI
+     * @throws URISyntaxException если адрес не удается преобразовать
+     */
+    public static URI toUri(String url) throws URISyntaxException {
         try {
-            HttpURLConnection huc = (HttpURLConnection) new URL(url).openConnection();
-            responseCode = huc.getResponseCode();
-        } catch (IOException e) {
-            log.info("IOException: при подключении к url: " + url);
-            e.printStackTrace();
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            try {
+                URL u = new URL(url);
+                return new URI(u.getProtocol(), u.getUserInfo(), u.getHost(), u.getPort(),
+                        u.getPath(), u.getQuery(), u.getRef());
+            } catch (MalformedURLException ex) {
+                throw new URISyntaxException(url, ex.getMessage());
+            }
         }
-        return responseCode;
     }
 }
@@ -1,11 +1,87 @@
 package searchengine.util;
 
+import org.jsoup.Jsoup;
 import searchengine.dto.index.PageDto;
 import searchengine.model.Page;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+
 public class PageToolsBox {
 
+    /**
+     * Вычисляет SHA-256 тела ответа сайта
+     * @param body тело ответа
+     * @return String hex-строка хеша или null, если тело null
+     */
+    public static String contentHash(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Текст страницы для лемматизации: заголовок и видимый текст.
+     * Для страниц, сохраненных без извлеченного текста, текст получается разбором контента.
+     * @param page страница
+     * @return String текст страницы
+     */
+    public static String getText(Page page) {
+        if (page.getText() != null) {
+            return page.getText();
+        }
+        return HtmlToolsBox.extractText(page.getContent());
+    }
 
+    /**
+     * Заголовок страницы. Для страниц, сохраненных без извлеченного заголовка,
+     * заголовок получается разбором контента.
+     * @param page страница
+     * @return String заголовок страницы
+     */
+    public static String getTitle(Page page) {
+        if (page.getTitle() != null) {
+            return page.getTitle();
+        }
+        return Jsoup.parse(page.getContent()).title();
+    }
+
+    /**
+     * Проверяет, что страница не изменялась после сохранения: дата lastmod из sitemap
+     * не позже заголовка Last-Modified сохраненной версии. Дата без времени
+     * считается концом суток.
+     * @param lastmod String дата из sitemap (W3C Datetime)
+     * @param lastModified String заголовок Last-Modified сохраненной страницы (RFC 1123)
+     * @return boolean true - страница не изменялась, false - изменялась или даты неизвестны
+     */
+    public static boolean isNotModifiedSince(String lastmod, String lastModified) {
+        if (lastmod == null || lastModified == null) {
+            return false;
+        }
+        try {
+            Instant saved = ZonedDateTime.parse(lastModified, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Instant changed = lastmod.length() <= 10
+                    ? LocalDate.parse(lastmod).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant()
+                    : OffsetDateTime.parse(lastmod).toInstant();
+            return !changed.isAfter(saved);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
 
     public static PageDto pageModelToPageDto(Page page) {
         PageDto pageDto = new PageDto();
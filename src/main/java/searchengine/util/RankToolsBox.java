@@ -0,0 +1,91 @@
+package searchengine.util;
+
+/**
+ * Отбор лучших результатов поиска. Вместо сортировки всех найденных страниц
+ * используется куча ограниченного размера k: время отбора O(n log k),
+ * память O(k).
+ */
+public class RankToolsBox {
+
+    /**
+     * Отбирает k элементов с наибольшей оценкой. При равных оценках
+     * выше стоит элемент с меньшим индексом.
+     * @param scores оценки элементов
+     * @param k сколько элементов отобрать
+     * @return int[] индексы отобранных элементов по убыванию оценки
+     */
+    public static int[] topK(double[] scores, int k) {
+        k = Math.max(0, Math.min(k, scores.length));
+        // в корне кучи - худший из отобранных элементов
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < scores.length && k > 0; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, scores);
+            } else if (better(i, heap[0], scores)) {
+                heap[0] = i;
+                siftDown(heap, size, scores);
+            }
+        }
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, scores);
+        }
+        return result;
+    }
+
+    /**
+     * @param scores оценки
+     * @return double максимальная оценка, 0 для пустого массива
+     */
+    public static double max(double[] scores) {
+        double max = 0;
+        for (double score : scores) {
+            max = Math.max(max, score);
+        }
+        return max;
+    }
+
+    private static boolean better(int a, int b, double[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int pos, double[] scores) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!better(heap[parent], item, scores)) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int item = heap[0];
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!better(item, heap[child], scores)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+}
@@ -0,0 +1,147 @@
+package searchengine.util;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Правила robots.txt сайта для группы User-agent: *.
+ * Проверка адреса выполняется по правилу Allow/Disallow с самым длинным
+ * совпадающим шаблоном, при равной длине приоритет у Allow. В шаблонах
+ * поддерживаются символы * и $.
+ */
+public class RobotsRules {
+    private final List<Rule> rules = new ArrayList<>();
+    // пауза между запросами, мс (0 - не задана)
+    @Getter
+    private long crawlDelay = 0;
+    @Getter
+    private final List<String> sitemaps = new ArrayList<>();
+    @Getter
+    private final long loadedAt = System.currentTimeMillis();
+
+    private record Rule(String pattern, boolean allow) {
+    }
+
+    /**
+     * Правила, разрешающие обход всего сайта (robots.txt отсутствует)
+     */
+    public static RobotsRules allowAll() {
+        return new RobotsRules();
+    }
+
+    /**
+     * Разбирает содержимое robots.txt
+     * @param content String текст файла
+     * @return RobotsRules правила для группы User-agent: *
+     */
+    public static RobotsRules parse(String content) {
+        RobotsRules robots = new RobotsRules();
+        boolean inGroup = false;
+        boolean groupHasRules = false;
+        for (String rawLine : content.split("\r?\n|\r")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).strip();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).strip().toLowerCase();
+            String value = line.substring(colon + 1).strip();
+            switch (key) {
+                case "user-agent" -> {
+                    // подряд идущие строки User-agent относятся к одной группе
+                    if (groupHasRules) {
+                        inGroup = false;
+                        groupHasRules = false;
+                    }
+                    inGroup |= value.equals("*");
+                }
+                case "allow", "disallow" -> {
+                    groupHasRules = true;
+                    if (inGroup && !value.isEmpty()) {
+                        robots.rules.add(new Rule(value, key.equals("allow")));
+                    }
+                }
+                case "crawl-delay" -> {
+                    groupHasRules = true;
+                    if (inGroup) {
+                        try {
+                            robots.crawlDelay = (long) (Double.parseDouble(value) * 1000);
+                        } catch (NumberFormatException ignored) {
+                            // некорректное значение игнорируется
+                        }
+                    }
+                }
+                case "sitemap" -> robots.sitemaps.add(value);
+                default -> {
+                }
+            }
+        }
+        return robots;
+    }
+
+    /**
+     * Проверяет, разрешен ли обход адреса
+     * @param url String абсолютный адрес страницы
+     * @param rootUrl корневой адрес сайта    ex: http://site.com
+     * @return boolean true - обход разрешен
+     */
+    public boolean isAllowed(String url, String rootUrl) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path = url.length() > rootUrl.length() ? url.substring(rootUrl.length()) : "/";
+        int bestLength = -1;
+        boolean allowed = true;
+        for (Rule rule : rules) {
+            int length = rule.pattern().length();
+            if (length < bestLength || !matches(rule.pattern(), path)) {
+                continue;
+            }
+            if (length > bestLength || rule.allow()) {
+                bestLength = length;
+                allowed = rule.allow();
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Сопоставляет путь с шаблоном за один проход двумя указателями. При несовпадении
+     * возвращается только к последней звездочке шаблона и сдвигает на один символ
+     * часть пути, поглощенную ей: звездочки до нее уже сопоставлены с минимальной
+     * длиной, и более длинный вариант для них ничего не меняет. Время O(len(pattern) * len(path)).
+     * @param pattern шаблон правила, * - любая последовательность символов,
+     *                $ в конце - путь должен заканчиваться на шаблон
+     * @param path путь страницы
+     * @return boolean true - путь соответствует шаблону
+     */
+    private static boolean matches(String pattern, String path) {
+        boolean anchored = pattern.endsWith("$");
+        int end = anchored ? pattern.length() - 1 : pattern.length();
+        int pi = 0;
+        int si = 0;
+        // позиция последней звездочки и начало поглощенной ей части пути
+        int star = -1;
+        int mark = 0;
+        while (true) {
+            if (pi == end && (!anchored || si == path.length())) {
+                return true;
+            }
+            if (pi < end && pattern.charAt(pi) == '*') {
+                star = pi++;
+                mark = si;
+            } else if (pi < end && si < path.length() && pattern.charAt(pi) == path.charAt(si)) {
+                pi++;
+                si++;
+            } else if (star >= 0 && mark < path.length()) {
+                pi = star + 1;
+                si = ++mark;
+            } else {
+                return false;
+            }
+        }
+    }
+}
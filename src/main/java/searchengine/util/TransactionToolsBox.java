@@ -0,0 +1,29 @@
+package searchengine.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Служебные утилиты для работы с транзакциями
+ */
+public class TransactionToolsBox {
+
+    /**
+     * Выполняет действие после фиксации текущей транзакции, без транзакции - сразу.
+     * При откате транзакции действие не выполняется, поэтому так обновляются данные
+     * в памяти, которые должны соответствовать БД.
+     * @param action действие
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
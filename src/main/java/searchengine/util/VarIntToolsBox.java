@@ -0,0 +1,61 @@
+package searchengine.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Сжатие возрастающих последовательностей целых чисел (позиции слов, смещения
+ * в тексте). Хранятся разности соседних значений в формате varint: 7 бит на байт,
+ * старший бит - признак продолжения. Небольшие разности занимают 1 байт.
+ */
+public class VarIntToolsBox {
+
+    /**
+     * Кодирует возрастающую последовательность
+     * @param values неубывающие неотрицательные значения
+     * @param count количество значений
+     * @return byte[] закодированная последовательность
+     */
+    public static byte[] encodeDeltas(int[] values, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count + 4);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = values[i] - previous;
+            previous = values[i];
+            while ((delta & ~0x7F) != 0) {
+                out.write((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            out.write(delta);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Декодирует последовательность, закодированную {@link #encodeDeltas}
+     * @param bytes закодированная последовательность, может быть null
+     * @return int[] исходные значения (пустой массив для null)
+     */
+    public static int[] decodeDeltas(byte[] bytes) {
+        if (bytes == null) {
+            return new int[0];
+        }
+        int[] values = new int[bytes.length];
+        int count = 0;
+        int value = 0;
+        int delta = 0;
+        int shift = 0;
+        for (byte b : bytes) {
+            delta |= (b & 0x7F) << shift;
+            if ((b & 0x80) != 0) {
+                shift += 7;
+                continue;
+            }
+            value += delta;
+            values[count++] = value;
+            delta = 0;
+            shift = 0;
+        }
+        return Arrays.copyOf(values, count);
+    }
+}
@@ -0,0 +1,151 @@
+package searchengine.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Разбивает текст на слова из русских (а-я) или латинских (a-z) букв за один
+ * проход по символам. Слово состоит из букв одного алфавита, при смене алфавита
+ * начинается новое слово. Заглавные буквы приводятся
+ * к строчным при разборе, все остальные символы считаются разделителями.
+ * Границы слов записываются в массивы, которые используются повторно, поэтому
+ * у каждого потока свой экземпляр (см. {@link #forCurrentThread()}).
+ */
+public class WordTokenizer {
+    private static final ThreadLocal<WordTokenizer> INSTANCE = ThreadLocal.withInitial(WordTokenizer::new);
+
+    private char[] buffer = new char[1024];
+    private int[] starts = new int[128];
+    private int[] ends = new int[128];
+    private int count = 0;
+
+    /**
+     * @return WordTokenizer экземпляр токенизатора текущего потока
+     */
+    public static WordTokenizer forCurrentThread() {
+        return INSTANCE.get();
+    }
+
+    /**
+     * Разбирает текст на слова. Результат доступен до следующего вызова.
+     * @param text String исходный текст
+     * @param minLength минимальная длина слова, более короткие слова отбрасываются
+     * @return int количество слов
+     */
+    public int tokenize(String text, int minLength) {
+        int length = text.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        text.getChars(0, length, buffer, 0);
+        count = 0;
+        int start = -1;
+        boolean startLatin = false;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? lower(buffer[i]) : ' ';
+            boolean cyrillic = isCyrillic(c);
+            boolean latin = isLatin(c);
+            if (start >= 0 && (!(cyrillic || latin) || latin != startLatin)) {
+                if (i - start >= minLength) {
+                    add(start, i);
+                }
+                start = -1;
+            }
+            if (cyrillic || latin) {
+                buffer[i] = c;
+                if (start < 0) {
+                    start = i;
+                    startLatin = latin;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return int количество слов последнего разобранного текста
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param index номер слова
+     * @return int позиция первого символа слова в тексте
+     */
+    public int start(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @param index номер слова
+     * @return int позиция символа, следующего за словом
+     */
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @param index номер слова
+     * @return String слово в нижнем регистре
+     */
+    public String word(int index) {
+        return new String(buffer, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * @return List<String> все слова последнего разобранного текста
+     */
+    public List<String> words() {
+        List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            words.add(word(i));
+        }
+        return words;
+    }
+
+    /**
+     * Находит конец слова, начинающегося в позиции start
+     * @param text текст
+     * @param start позиция первой буквы слова
+     * @return int позиция символа, следующего за словом
+     */
+    public static int wordEnd(CharSequence text, int start) {
+        boolean latin = isLatin(lower(text.charAt(start)));
+        int i = start;
+        while (i < text.length()) {
+            char c = lower(text.charAt(i));
+            if (latin ? !isLatin(c) : !isCyrillic(c)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isCyrillic(char c) {
+        return c >= 'а' && c <= 'я';
+    }
+
+    private static boolean isLatin(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private static char lower(char c) {
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
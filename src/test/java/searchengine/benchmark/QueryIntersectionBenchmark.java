@@ -0,0 +1,125 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import searchengine.repository.InvertedIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подбор страниц по запросам из 2, 4 и 8 лемм: пересечение сжатых списков
+ * InvertedIndex.match и прежняя фильтрация списков страниц через List.contains.
+ * Корпус синтетический: леммы страниц выбираются по закону Ципфа, поэтому частые
+ * леммы есть почти на всех страницах, а редкие - на единицах процентов.
+ * Запросы: frequent - только частые леммы, rare - только редкие, mixed - одна
+ * частая лемма и редкие.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryIntersectionBenchmark {
+    private static final int SITE_ID = 1;
+    private static final int PAGES = 10_000;
+    private static final int WORDS_PER_PAGE = 200;
+    private static final int VOCABULARY = 2_000;
+    // первая редкая лемма: при выбранном распределении встречается примерно на 2% страниц
+    private static final int RARE_FROM = 1_000;
+
+    @Param({"2", "4", "8"})
+    public int terms;
+
+    @Param({"frequent", "rare", "mixed"})
+    public String kind;
+
+    private InvertedIndex index;
+    private List<String> query;
+    // лемма -> страницы, как их раньше загружал поиск перед пересечением
+    private Map<String, List<Integer>> pagesByLemma;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        double[] cumulative = zipf(VOCABULARY);
+        index = new InvertedIndex(null);
+        Map<String, List<Integer>> pages = new HashMap<>();
+        for (int pageId = 1; pageId <= PAGES; pageId++) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i < WORDS_PER_PAGE; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+                counts.merge(lemma(rank < 0 ? -rank - 1 : rank), 1, Integer::sum);
+            }
+            index.addPage(SITE_ID, pageId, counts);
+            for (String lemma : counts.keySet()) {
+                pages.computeIfAbsent(lemma, l -> new ArrayList<>()).add(pageId);
+            }
+        }
+        pagesByLemma = pages;
+        query = new ArrayList<>();
+        for (int i = 0; i < terms; i++) {
+            boolean frequent = kind.equals("frequent") || (kind.equals("mixed") && i == 0);
+            query.add(lemma(frequent ? i : RARE_FROM + i * 7));
+        }
+    }
+
+    @Benchmark
+    public InvertedIndex.Match invertedIndex() {
+        return index.match(query, SITE_ID, 100);
+    }
+
+    /**
+     * Пересечение, которым SearchServiceImpl пользовался до инвертированного индекса
+     */
+    @Benchmark
+    public List<Integer> listFilter() {
+        List<Integer> pages = pagesByLemma.getOrDefault(query.get(0), List.of());
+        for (int i = 1; i < query.size(); i++) {
+            List<Integer> pagesNext = pagesByLemma.getOrDefault(query.get(i), List.of());
+            pages = pages.stream().filter(pagesNext::contains).toList();
+        }
+        return pages;
+    }
+
+    private static String lemma(int rank) {
+        return "w" + rank;
+    }
+
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QueryIntersectionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import searchengine.config.SearchCfg;
+import searchengine.repository.InvertedIndex;
+import searchengine.services.Bm25Scorer;
+import searchengine.services.TermCountScorer;
+import searchengine.util.RankToolsBox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Оценка релевантности найденных страниц: BM25 и сумма упоминаний лемм, а также
+ * BM25 вместе с отбором первых 20 страниц выдачи. Результат подбора страниц
+ * синтетический: длины страниц распределены логнормально, количество упоминаний
+ * лемм - геометрически, частоты лемм растут от первой леммы к последней.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelevanceScorerBenchmark {
+    private static final int TOP = 20;
+
+    // количество найденных страниц
+    @Param({"1000", "100000"})
+    public int pages;
+
+    @Param({"2", "8"})
+    public int terms;
+
+    private InvertedIndex.Match match;
+    private Bm25Scorer bm25;
+    private TermCountScorer termCount;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int pageCount = pages * 10;
+        int[] pageIds = new int[pages];
+        int[] lengths = new int[pages];
+        long totalLength = 0;
+        for (int i = 0; i < pages; i++) {
+            pageIds[i] = i * 10 + 1;
+            lengths[i] = (int) Math.max(20, Math.exp(6 + random.nextGaussian()));
+            totalLength += lengths[i];
+        }
+        List<String> lemmas = new ArrayList<>();
+        int[][] counts = new int[terms][pages];
+        int[] frequencies = new int[terms];
+        for (int t = 0; t < terms; t++) {
+            lemmas.add("w" + t);
+            frequencies[t] = pages + (pageCount - pages) * t / terms;
+            for (int i = 0; i < pages; i++) {
+                counts[t][i] = 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(0.7));
+            }
+        }
+        match = new InvertedIndex.Match(lemmas, pageIds, counts, frequencies, lengths,
+                pageCount, (double) totalLength / pages);
+        bm25 = new Bm25Scorer(new SearchCfg());
+        termCount = new TermCountScorer();
+    }
+
+    @Benchmark
+    public double[] bm25() {
+        return bm25.score(match);
+    }
+
+    @Benchmark
+    public double[] termCount() {
+        return termCount.score(match);
+    }
+
+    @Benchmark
+    public int[] bm25TopK() {
+        return RankToolsBox.topK(bm25.score(match), TOP);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RelevanceScorerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,94 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import searchengine.util.WordTokenizer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение разбора текста на слова: прежний конвейер toLowerCase/replaceAll/split
+ * и однопроходный WordTokenizer. Текст страницы синтетический, размером ровно 1 МиБ
+ * символов, поэтому результат в ops/s равен пропускной способности в МиБ текста в секунду.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordTokenizerBenchmark {
+    private static final int TEXT_LENGTH = 1 << 20;
+    private static final String[] WORDS = {"Поиск", "страницы", "сайта", "и", "в", "индексации", "леммы",
+            "Search", "engine", "по", "запросу", "результаты", "2024", "—", "«цитата»", "т.д.", "HTTP/2"};
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(TEXT_LENGTH + 32);
+        while (sb.length() < TEXT_LENGTH) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            sb.append(random.nextInt(10) == 0 ? ", " : " ");
+        }
+        sb.setLength(TEXT_LENGTH);
+        text = sb.toString();
+    }
+
+    /**
+     * Разбор, которым MorphologyServiceImpl.getWords пользовался до WordTokenizer
+     */
+    @Benchmark
+    public List<String> regexSplit() {
+        return Arrays.stream(text.toLowerCase()
+                        .replaceAll("([^а-я\s])", " ")
+                        .strip()
+                        .split("\\s+"))
+                .filter(word -> word.length() > 2)
+                .toList();
+    }
+
+    /**
+     * Только границы слов, как их использует лемматизация страницы
+     */
+    @Benchmark
+    public void tokenizerSpans(Blackhole blackhole) {
+        WordTokenizer tokenizer = WordTokenizer.forCurrentThread();
+        int count = tokenizer.tokenize(text, 3);
+        for (int i = 0; i < count; i++) {
+            blackhole.consume(tokenizer.end(i) - tokenizer.start(i));
+        }
+    }
+
+    /**
+     * Границы слов и строки слов, как их возвращает getWords
+     */
+    @Benchmark
+    public List<String> tokenizerWords() {
+        WordTokenizer tokenizer = WordTokenizer.forCurrentThread();
+        tokenizer.tokenize(text, 3);
+        return tokenizer.words();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WordTokenizerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,110 @@
+package searchengine.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Добавление, удаление и пересечение списка страниц на границах блоков
+ * (64 и 65 страниц), для пустого списка и для страницы с id 1
+ */
+class PostingListTest {
+
+    @Test
+    void emptyList() {
+        PostingList list = new PostingList();
+        assertEquals(0, list.size());
+        assertEquals(0, list.read().size());
+        assertEquals(0, list.retain(new int[]{1, 2, 3}).size());
+        assertFalse(list.remove(1));
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    void firstPage() {
+        PostingList list = new PostingList();
+        list.add(1, 5);
+        assertArrayEquals(new int[]{1}, list.read().pageIds());
+        assertArrayEquals(new int[]{5}, list.retain(new int[]{1}).counts());
+        list.add(1, 7);
+        assertEquals(1, list.size());
+        assertArrayEquals(new int[]{7}, list.retain(new int[]{1}).counts());
+        assertTrue(list.remove(1));
+        assertFalse(list.remove(1));
+        assertEquals(0, list.retain(new int[]{1}).size());
+        list.add(1, 2);
+        assertArrayEquals(new int[]{1}, list.read().pageIds());
+        assertArrayEquals(new int[]{2}, list.read().counts());
+    }
+
+    @Test
+    void oneFullBlock() {
+        PostingList list = filled(64);
+        assertEquals(64, list.size());
+        assertArrayEquals(range(1, 64), list.retain(range(1, 70)).pageIds());
+        assertTrue(list.remove(64));
+        assertTrue(list.remove(1));
+        assertArrayEquals(range(2, 63), list.read().pageIds());
+        assertArrayEquals(range(2, 63), list.retain(range(1, 64)).pageIds());
+        list.add(64, 3);
+        list.add(1, 3);
+        assertEquals(64, list.size());
+        assertArrayEquals(range(1, 64), list.read().pageIds());
+        assertArrayEquals(new int[]{3, 3}, list.retain(new int[]{1, 64}).counts());
+    }
+
+    @Test
+    void secondBlockStartsAt65() {
+        PostingList list = filled(65);
+        assertArrayEquals(new int[]{64, 65}, list.retain(new int[]{64, 65, 66}).pageIds());
+        assertTrue(list.remove(65));
+        assertArrayEquals(new int[]{64}, list.retain(new int[]{64, 65}).pageIds());
+        list.add(65, 9);
+        list.add(66, 1);
+        assertArrayEquals(new int[]{64, 65, 66}, list.retain(new int[]{64, 65, 66}).pageIds());
+        assertArrayEquals(new int[]{64, 9, 1}, list.retain(new int[]{64, 65, 66}).counts());
+        assertEquals(66, list.size());
+    }
+
+    @Test
+    void outOfOrderAdds() {
+        PostingList list = new PostingList();
+        for (int pageId = 200; pageId >= 1; pageId -= 2) {
+            list.add(pageId, pageId);
+        }
+        assertEquals(100, list.size());
+        int[] expected = IntStream.rangeClosed(1, 100).map(i -> i * 2).toArray();
+        assertArrayEquals(expected, list.read().pageIds());
+        assertArrayEquals(expected, list.read().counts());
+        assertArrayEquals(new int[]{64, 66, 128}, list.retain(new int[]{63, 64, 65, 66, 127, 128}).pageIds());
+    }
+
+    @Test
+    void removesAcrossBlocks() {
+        PostingList list = filled(200);
+        for (int pageId = 1; pageId <= 200; pageId += 3) {
+            assertTrue(list.remove(pageId));
+        }
+        int[] expected = IntStream.rangeClosed(1, 200).filter(i -> (i - 1) % 3 != 0).toArray();
+        assertEquals(expected.length, list.size());
+        assertArrayEquals(expected, list.read().pageIds());
+        assertArrayEquals(expected, list.retain(range(1, 200)).pageIds());
+    }
+
+    private static PostingList filled(int count) {
+        PostingList list = new PostingList();
+        for (int pageId = 1; pageId <= count; pageId++) {
+            list.add(pageId, pageId);
+        }
+        return list;
+    }
+
+    private static int[] range(int from, int to) {
+        return IntStream.rangeClosed(from, to).toArray();
+    }
+}